@@ -0,0 +1,128 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a script of gitlet commands in a single process, one command per line, read from a
+ * file or from the standard input. Each command runs in its own session as if it were run
+ * on its own, printing the same output, but they all share the warm JVM and the objects
+ * cached by the previous commands. A command exiting with a message, or failing with an
+ * error, ends that command only; the batch goes on with the next line. Blank lines and
+ * lines starting with # are skipped, and an arg may be quoted with double or single quotes,
+ * such as commit "A message", a backslash escaping the next character outside of single
+ * quotes.
+ * @author Yuhan Zhang
+ */
+public class Batch {
+
+    /** Size of the buffer of the standard output of the batch. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Runs the batch of the command line args: --batch, followed by the script file unless
+     *  it is read from the standard input. Returns 1 if any command failed with an error, or
+     *  0 otherwise. */
+    public static int run(String[] args) {
+        if (args.length > 2) {
+            System.out.println("Incorrect operands.");
+            return 0;
+        } else if (args.length == 2 && !new File(args[1]).isFile()) {
+            System.out.println("File does not exist.");
+            return 0;
+        }
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out), BUFFER_SIZE), false));
+        Session.keepObjects();
+        int code = 0;
+        try (BufferedReader script = args.length == 2
+                ? Files.newBufferedReader(new File(args[1]).toPath(), StandardCharsets.UTF_8)
+                : new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            int lineNumber = 0;
+            for (String line = script.readLine(); line != null; line = script.readLine()) {
+                lineNumber += 1;
+                if (execute(line, lineNumber) != 0) {
+                    code = 1;
+                }
+                // Keeps the output of each command in order with its errors.
+                System.out.flush();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            System.out.flush();
+            System.setOut(stdout);
+        }
+        return code;
+    }
+
+    /** Runs the command of the specified line of the script, and returns its exit code. */
+    private static int execute(String line, int lineNumber) {
+        String[] args;
+        try {
+            args = parse(line);
+        } catch (GitletException e) {
+            System.err.printf("Line %d: %s%n", lineNumber, e.getMessage());
+            return 1;
+        }
+        if (args.length == 0) {
+            return 0;
+        }
+        if (args[0].equals("daemon") || args[0].equals("--batch")) {
+            System.err.printf("Line %d: %s cannot run in a batch.%n", lineNumber, args[0]);
+            return 1;
+        }
+        return Main.executeAndReport(args, System.getenv(Trace.ENV));
+    }
+
+    /** Returns the args of the specified line of a script, none if it is blank or a
+     *  comment. */
+    static String[] parse(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder arg = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote == 0 && arg == null && args.isEmpty() && c == '#') {
+                break;
+            } else if (quote == 0 && Character.isWhitespace(c)) {
+                if (arg != null) {
+                    args.add(arg.toString());
+                    arg = null;
+                }
+                continue;
+            }
+            if (arg == null) {
+                arg = new StringBuilder();
+            }
+            if (c == quote) {
+                quote = 0;
+            } else if (quote == 0 && (c == '"' || c == '\'')) {
+                quote = c;
+            } else if (c == '\\' && quote != '\'' && i + 1 < line.length()) {
+                i += 1;
+                arg.append(line.charAt(i));
+            } else {
+                arg.append(c);
+            }
+        }
+        if (quote != 0) {
+            throw Utils.error("Unterminated quote.");
+        }
+        if (arg != null) {
+            args.add(arg.toString());
+        }
+        return args.toArray(new String[0]);
+    }
+
+}
@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Represents an immutable set of non-negative integers compressed as sorted runs of
+ * consecutive integers, in the spirit of EWAH bitmaps. The commit-graph numbers commits in
+ * topological order, so the set of commits reachable from one is mostly a few long runs.
+ * @author Yuhan Zhang
+ */
+public class Bitmap {
+
+    /** The empty bitmap. */
+    public static final Bitmap EMPTY = new Bitmap(new int[0]);
+
+    /** Bounds of the runs, the start (inclusive) and the end (exclusive) of each run in
+     *  increasing order. Runs never overlap nor touch. */
+    private final int[] runs;
+
+    /** Constructor of the bitmap of the specified runs. */
+    private Bitmap(int[] runs) {
+        this.runs = runs;
+    }
+
+    /** Returns the bitmap holding the specified integers, in any order. */
+    public static Bitmap of(int... values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int[] runs = new int[sorted.length * 2];
+        int n = 0;
+        for (int v : sorted) {
+            if (n > 0 && v <= runs[n - 1]) {
+                runs[n - 1] = Math.max(runs[n - 1], v + 1);
+            } else {
+                runs[n] = v;
+                runs[n + 1] = v + 1;
+                n += 2;
+            }
+        }
+        return new Bitmap(Arrays.copyOf(runs, n));
+    }
+
+    /** Returns whether the bitmap holds the specified integer. */
+    public boolean contains(int value) {
+        // Finds the last run starting at or before the value.
+        int lo = 0;
+        int hi = runs.length / 2;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (runs[mid * 2] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo > 0 && value < runs[(lo - 1) * 2 + 1];
+    }
+
+    /** Returns the union of this bitmap and the other one. */
+    public Bitmap or(Bitmap other) {
+        int[] merged = new int[runs.length + other.runs.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < runs.length || j < other.runs.length) {
+            int start;
+            int end;
+            if (j >= other.runs.length || (i < runs.length && runs[i] <= other.runs[j])) {
+                start = runs[i];
+                end = runs[i + 1];
+                i += 2;
+            } else {
+                start = other.runs[j];
+                end = other.runs[j + 1];
+                j += 2;
+            }
+            if (n > 0 && start <= merged[n - 1]) {
+                merged[n - 1] = Math.max(merged[n - 1], end);
+            } else {
+                merged[n] = start;
+                merged[n + 1] = end;
+                n += 2;
+            }
+        }
+        return new Bitmap(Arrays.copyOf(merged, n));
+    }
+
+    /** Returns the integers of this bitmap which are not in the other one. */
+    public Bitmap andNot(Bitmap other) {
+        int[] result = new int[runs.length + other.runs.length];
+        int n = 0;
+        int j = 0;
+        for (int i = 0; i < runs.length; i += 2) {
+            int start = runs[i];
+            int end = runs[i + 1];
+            // Skips the runs of the other bitmap ending before this run.
+            while (j < other.runs.length && other.runs[j + 1] <= start) {
+                j += 2;
+            }
+            // Cuts out the runs of the other bitmap overlapping this run.
+            int k = j;
+            while (k < other.runs.length && other.runs[k] < end) {
+                if (other.runs[k] > start) {
+                    result[n] = start;
+                    result[n + 1] = other.runs[k];
+                    n += 2;
+                }
+                start = Math.max(start, other.runs[k + 1]);
+                k += 2;
+            }
+            if (start < end) {
+                result[n] = start;
+                result[n + 1] = end;
+                n += 2;
+            }
+        }
+        return new Bitmap(Arrays.copyOf(result, n));
+    }
+
+    /** Returns the number of integers in the bitmap. */
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < runs.length; i += 2) {
+            total += runs[i + 1] - runs[i];
+        }
+        return total;
+    }
+
+    /** Returns the integers of the bitmap in increasing order. */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int n = 0;
+        for (int i = 0; i < runs.length; i += 2) {
+            for (int v = runs[i]; v < runs[i + 1]; v += 1) {
+                values[n] = v;
+                n += 1;
+            }
+        }
+        return values;
+    }
+
+    /** Writes the bitmap, the number of runs followed by their bounds. */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(runs.length / 2);
+        for (int bound : runs) {
+            out.writeInt(bound);
+        }
+    }
+
+    /** Reads a bitmap written by write from the current position of BUF. */
+    public static Bitmap read(ByteBuffer buf) {
+        int[] runs = new int[buf.getInt() * 2];
+        for (int i = 0; i < runs.length; i += 1) {
+            runs[i] = buf.getInt();
+        }
+        return new Bitmap(runs);
+    }
+
+}
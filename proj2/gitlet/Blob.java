@@ -1,80 +1,84 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.*;
+import java.util.Arrays;
 
 import static gitlet.Utils.*;
 
 /**
- * Represents a blob tracking each file in the repository.
+ * Represents a blob holding one version of a file's contents in the repository.
+ * Blobs are content-addressed: the UID is the SHA-1 hash of the contents, so that
+ * identical contents are stored only once no matter how many commits track them.
+ * A blob is stored as a magic number followed by its raw contents, so that it can be
+ * written and read as a stream.
  * @author Yuhan Zhang
  */
 public class Blob implements Serializable {
 
-    /** Name of this blob, relative path to the CWD. */
-    private final String name;
-    /** Absolute path to the file of this blob. */
-    private final File path;
-    /** Contents in the file of this blob. */
-    private final byte[] contents;
+    /** Magic number at the beginning of the stored bytes of a blob, "BLOB". */
+    static final byte[] MAGIC = {'B', 'L', 'O', 'B'};
 
-    /** Constructor, sets the name and path, reads the contents from file. */
-    public Blob(String name, File path) {
-        this.name = name;
-        this.path = path;
-        if (path.exists()) {
-            this.contents = readContents(this.path);
-        } else {
-            this.contents = null;
-        }
-    }
+    /** Contents of the file version of this blob. */
+    private final byte[] contents;
+    /** UID of this blob, SHA-1 hash of its contents. */
+    private final String UID;
 
     /** Constructor, creates a blob with the specified contents. */
-    public Blob(String name, File path, byte[] contents) {
-        this.name = name;
-        this.path = path;
+    public Blob(byte[] contents) {
         this.contents = contents;
+        this.UID = sha1(contents);
     }
 
-    /** Deletes the file of the blob. */
-    public void delete() {
-        if (path.exists()) {
-            path.delete();
-        }
+    /** Constructor, reads the contents from the specified file. */
+    public Blob(File file) {
+        this(readContents(file));
     }
 
-    /** Overwrites the file contents with the version of the blob. */
-    public void overwrite() {
-        try {
-            path.createNewFile();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /** Writes the Blob object if it is not stored yet. */
+    public void save() {
+        saveTo(ObjectStore.local());
+    }
+
+    /** Writes the Blob object to the specified store if it is not stored there yet. */
+    public void saveTo(ObjectStore store) {
+        // Blobs are immutable, an existing object already holds the same contents.
+        if (!store.contains(UID)) {
+            store.writeBlob(UID, new ByteArrayInputStream(contents), contents.length);
         }
-        writeContents(path, contents);
     }
 
-    /** Returns whether the blob is in the specified map. */
-    public boolean isIn(Map<File, Blob> map) {
-        return map.containsKey(this.path);
+    /** Returns whether the stored BYTES of an object are those of a blob. */
+    static boolean isStored(byte[] bytes) {
+        return bytes.length >= MAGIC.length
+                && Arrays.equals(bytes, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    /** Returns the blob of the specified stored BYTES. */
+    static Blob fromStored(byte[] bytes) {
+        return new Blob(Arrays.copyOfRange(bytes, MAGIC.length, bytes.length));
     }
 
-    /** Returns whether the blob in FROM is modified in TO. */
-    public boolean isModifiedIn(Map<File, Blob> from, Map<File, Blob> to) {
-        byte[] fromContents = from.get(path).contents;
-        byte[] toContents = to.get(path).contents;
-        return !Arrays.equals(fromContents, toContents);
+    /** Returns the Blob object of the specified UID. */
+    public static Blob find(String blobID) {
+        return ObjectStore.local().read(blobID, Blob.class);
     }
 
-    /** Returns the name of the blob. */
-    public String getName() {
-        return this.name;
+    /** Overwrites the contents of the specified file with the version of the blob. */
+    public void overwrite(File file) {
+        try {
+            file.createNewFile();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        writeContents(file, contents);
     }
 
-    /** Returns the path to the file. */
-    public File getPath() {
-        return this.path;
+    /** Returns the UID of the blob. */
+    public String getUID() {
+        return this.UID;
     }
 
     /** Returns the contents of the file. */
@@ -2,121 +2,196 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import static gitlet.Utils.*;
 import static gitlet.Repository.*;
 
 /**
- * Represents a gitlet branch object.
+ * Represents a gitlet branch object. The reference file of a branch, refs/heads/<name>, is
+ * plain text holding the UID of its head commit, and names containing slashes are nested in
+ * directories, such as refs/heads/R1/master. The references may also be packed into the
+ * packed-refs file of the repository, see PackedRefs, so finding a branch by name is a
+ * direct file read or a binary search, never a scan of all the branches.
  * @author Yuhan Zhang
  */
-public class Branch implements Serializable {
+public class Branch implements Dumpable {
+
+    /** Path to the reference files of branches, relative to a repository. */
+    private static final String HEADS = "refs/heads/";
 
     /** Name of this branch. */
     private final String name;
-    /** Relative path to this branch. */
-    private final File path;
     /** Absolute path to the repository (.gitlet) of this branch. */
     private final File directory;
-    /** Latest commit of this branch. */
-    private Commit commit;
+    /** UID of the latest commit of this branch. */
+    private String commitID;
 
     /** Constructor of a branch. */
     public Branch(String name) {
         this.name = name;
-        this.path = join("refs", "heads", this.name.replace("/", "_"));
         this.directory = GITLET_DIR;
+        // Checks if a branch with the given name, or nesting or nested in it, already exists,
+        // the logs of all the branches being files even if their references are packed.
+        if (read(directory, name) != null || !create(getLogFile()) || !create(getRefFile())) {
+            exit("A branch with that name already exists.");
+        }
+        save();
+    }
+
+    /** Creates the specified reference or log file and its parent directories, and returns
+     *  whether it did not exist and none of its parents is a file. */
+    private static boolean create(File file) {
+        File parent = file.getParentFile();
         try {
-            // Checks if a branch with the given name already exists.
-            if (!getRefFile().createNewFile() || !getLogFile().createNewFile()) {
-                exit("A branch with that name already exists.");
-            }
+            return (parent.isDirectory() || parent.mkdirs()) && file.createNewFile();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        save();
     }
 
-    /** Updates and writes to the Branch object. */
+    /** Constructor of a branch of the specified name, repository and head commit. */
+    private Branch(String name, File directory, String commitID) {
+        this.name = name;
+        this.directory = directory;
+        this.commitID = commitID;
+    }
+
+    /** Updates and writes the reference file of the branch, which may have been packed. */
     public void save() {
-        writeObject(this.getRefFile(), this);
+        getRefFile().getParentFile().mkdirs();
+        writeContents(this.getRefFile(), commitID == null ? "" : commitID);
+        Session.get().wrote(getRefFile(), this);
+    }
+
+    /** Returns the branch of the specified name of the repository (.gitlet) DIRECTORY, or null
+     *  if there is none, cached by the session. */
+    public static Branch read(File directory, String name) {
+        File refFile = join(directory, HEADS + name);
+        return Session.get().read(refFile, () -> {
+            if (refFile.isFile()) {
+                String commitID = new String(readContents(refFile), StandardCharsets.US_ASCII)
+                        .trim();
+                return new Branch(name, directory, commitID.isEmpty() ? null : commitID);
+            }
+            String commitID = PackedRefs.of(directory).find(name);
+            return commitID == null ? null : new Branch(name, directory, commitID);
+        });
+    }
+
+    /** Returns the branch of the specified path to its reference file, as written in the
+     *  HEAD of the repository (.gitlet) DIRECTORY. */
+    public static Branch readPath(File directory, String path) {
+        return read(directory, path.replace(File.separatorChar, '/').substring(HEADS.length()));
     }
 
     /** Deletes the branch references. */
     public void remove() {
-        if (getRefFile().exists()) {
-            getRefFile().delete();
-        }
-        if (getLogFile().exists()) {
-            getLogFile().delete();
+        File heads = join(directory, HEADS);
+        deleteRef(getRefFile(), heads);
+        PackedRefs.of(directory).remove(name);
+        Session.get().evict(getRefFile());
+        deleteRef(getLogFile(), join(directory, "logs", HEADS));
+    }
+
+    /** Deletes the specified reference or log file and its parent directories left empty,
+     *  up to the directory TOP. */
+    private static void deleteRef(File file, File top) {
+        file.delete();
+        File parent = file.getParentFile();
+        while (!parent.equals(top) && parent.delete()) {
+            parent = parent.getParentFile();
         }
     }
 
     /** Synchronizes the branch with the specified branch history. */
     public void sync(Branch branch) {
-        this.commit = branch.commit;
+        this.commitID = branch.commitID;
         writeContents(this.getLogFile(), readContents(branch.getLogFile()));
         save();
     }
 
     /** Updates the branch with the latest commit and saves it. */
     public void setCommit(Commit commit) {
-        this.commit = commit;
+        this.commitID = commit.getUID();
         save();
     }
 
     /** Resets the branch with the specified commit. */
     public void resetCommit(Commit newCommit) {
-        getCurrentCommit().deleteTrackedFiles(newCommit);
-        newCommit.overwriteTrackedFiles();
+        getIndex().reset(getCurrentCommit(), newCommit);
+        moveCommit(newCommit);
+    }
+
+    /** Moves the branch head to the specified commit without touching the working files. */
+    public void moveCommit(Commit newCommit) {
         setCommit(newCommit);
-        // Regenerates the branch log file.
-        StringBuilder log = new StringBuilder();
-        Commit c = newCommit;
-        while (c != null) {
-            log.append(c.toString()).append("\n");
-            c = c.getParent();
+        getLog().appendReset(newCommit.getUID());
+    }
+
+    /** Returns all the existing branches, sorted by name. */
+    public static List<Branch> findAll() {
+        return findAll(GITLET_DIR);
+    }
+
+    /** Returns all the branches of the repository (.gitlet) DIRECTORY, sorted by name: those
+     *  of the packed-refs, replaced by those of the reference files. */
+    public static List<Branch> findAll(File directory) {
+        SortedMap<String, Branch> branches = new TreeMap<>();
+        for (Map.Entry<String, String> e : PackedRefs.of(directory).readAll().entrySet()) {
+            branches.put(e.getKey(), new Branch(e.getKey(), directory, e.getValue()));
         }
-        writeContents(getLogFile(), log.toString());
-        // Clears the staging area.
-        readObject(join(directory, "index"), Index.class).clear();
-    }
-
-    /** Returns all the commits in the branch history as a set. */
-    public Set<Commit> getAllCommits() {
-        Set<Commit> commits = new HashSet<>();
-        Commit c = commit;
-        while (c.getParent() != null) {
-            commits.add(c);
-            c = c.getParent();
+        List<String> names = new ArrayList<>();
+        listRefs(join(directory, HEADS), "", names);
+        for (String name : names) {
+            Branch b = read(directory, name);
+            if (b != null) {
+                branches.put(b.name, b);
+            }
         }
-        return commits;
+        return new ArrayList<>(branches.values());
     }
 
-    /** Finds all the existing branches and returns them as a set. */
-    public static Set<Branch> findAll() {
-        File dir = join(REFS_DIR, "heads");
-        List<String> branchNames = plainFilenamesIn(dir);
-        Set<Branch> branches = new HashSet<>();
-        if (branchNames != null) {
-            for (String name : branchNames) {
-                branches.add(readObject(join(dir, name), Branch.class));
+    /** Adds to NAMES the names, under PREFIX, of the reference files in the directory DIR
+     *  and its subdirectories. */
+    private static void listRefs(File dir, String prefix, List<String> names) {
+        Trace.listed(dir);
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                listRefs(f, prefix + f.getName() + "/", names);
+            } else {
+                names.add(prefix + f.getName());
             }
         }
-        return branches;
     }
 
-    /** Returns the Branch object of the specified branch name. */
-    public static Branch find(String branchName, int key) {
-        Branch branch = null;
-        for (Branch b : findAll()) {
-            if (branchName.equals(b.name)) {
-                branch = b;
-                break;
+    /** Moves the references of all the branches of the repository (.gitlet) DIRECTORY into
+     *  its packed-refs, deleting their reference files. */
+    public static void packRefs(File directory) {
+        SortedMap<String, String> refs = new TreeMap<>();
+        List<Branch> branches = findAll(directory);
+        for (Branch b : branches) {
+            if (b.commitID != null) {
+                refs.put(b.name, b.commitID);
             }
         }
+        PackedRefs.of(directory).write(refs);
+        for (Branch b : branches) {
+            if (b.commitID != null && b.getRefFile().isFile()) {
+                deleteRef(b.getRefFile(), join(directory, HEADS));
+                Session.get().evict(b.getRefFile());
+            }
+        }
+    }
+
+    /** Returns the Branch object of the specified branch name. */
+    public static Branch find(String branchName, int key) {
+        Branch branch = read(GITLET_DIR, branchName);
         // If no branch with that name exists.
         if (branch == null && key == 1) {
             exit("No such branch exists.");
@@ -131,24 +206,44 @@ public class Branch implements Serializable {
         return this.name;
     }
 
-    /** Return the relative path of the branch. */
+    /** Return the path to the reference file of the branch, relative to its repository. */
     public File getPath() {
-        return this.path;
+        return join(HEADS + name);
     }
 
     /** Return the absolute path to the refs. */
     public File getRefFile() {
-        return join(directory, this.path);
+        return join(directory, getPath());
+    }
+
+    /** Returns the log of the branch. */
+    public BranchLog getLog() {
+        return new BranchLog(getLogFile());
     }
 
     /** Return the absolute path to the logs. */
     public File getLogFile() {
-        return join(join(directory, "logs"), this.path);
+        return join(join(directory, "logs"), getPath());
     }
 
-    /** Return the latest commit of the branch. */
+    /** Return the store holding the objects of the repository of the branch. */
+    public ObjectStore getObjectStore() {
+        return ObjectStore.of(directory);
+    }
+
+    /** Return the latest commit of the branch, loaded from the repository of the branch. */
     public Commit getCommit() {
-        return this.commit;
+        return getObjectStore().read(commitID, Commit.class);
     }
 
+    /** Return the UID of the latest commit of the branch. */
+    public String getCommitID() {
+        return this.commitID;
+    }
+
+    /** Prints the fields of the branch. */
+    @Override
+    public void dump() {
+        System.out.printf("branch %s%ncommit %s%n", name, commitID);
+    }
 }
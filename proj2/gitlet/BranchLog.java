@@ -0,0 +1,122 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static gitlet.Utils.*;
+
+/**
+ * Represents the log file of a branch, an append-only sequence of records read backwards.
+ * The file starts with a magic number, then each record holds its payload followed by the
+ * length of the payload and the type of the record, so that records are found from the end.
+ * A commit record holds the UID of a commit, the UID of its parent (blank if none) and its
+ * log message; a reset record holds the UID of the commit the branch head was moved to.
+ * The last record is always the branch head.
+ * @author Yuhan Zhang
+ */
+public class BranchLog {
+
+    /** Magic number at the beginning of the log file, "GLOG". */
+    private static final int MAGIC = 0x474c4f47;
+    /** Record type of a commit made on the branch. */
+    private static final byte COMMIT = 0;
+    /** Record type of a move of the branch head. */
+    private static final byte RESET = 1;
+    /** Number of bytes following the payload of a record. */
+    private static final int FOOTER_SIZE = 5;
+    /** Parent UID of the commit records of commits with no parent. */
+    private static final String NO_PARENT = " ".repeat(UID_LENGTH);
+
+    /** Absolute path to the log file. */
+    private final File file;
+
+    /** Constructor of the log of the specified log file. */
+    public BranchLog(File file) {
+        this.file = file;
+    }
+
+    /** Appends the record of the specified commit made on the branch. */
+    public void appendCommit(Commit commit) {
+        String parent = commit.getParentID() == null ? NO_PARENT : commit.getParentID();
+        append(COMMIT, commit.getUID() + parent + commit);
+    }
+
+    /** Appends the record of a move of the branch head to the specified commit. */
+    public void appendReset(String commitID) {
+        append(RESET, commitID);
+    }
+
+    /** Prints the commits of the branch history, starting at the head backwards until the
+     *  initial commit. The commit records are found by reading the log backwards, skipping
+     *  the records of commits left behind by resets; the commits of history not recorded in
+     *  this log, such as the one of a branch fetched from a remote, are read instead. */
+    public void print() {
+        if (!file.exists() || file.length() == 0) {
+            return;
+        }
+        ByteBuffer buf = mapContents(file);
+        String next = null;
+        int pos = buf.limit();
+        while (pos > 4) {
+            byte type = buf.get(pos - 1);
+            int length = buf.getInt(pos - FOOTER_SIZE);
+            pos -= FOOTER_SIZE + length;
+            String uid = getString(buf, pos, UID_LENGTH);
+            if (next == null) {
+                next = uid;
+            }
+            if (type == COMMIT && uid.equals(next)) {
+                System.out.println(getString(buf, pos + 2 * UID_LENGTH, length - 2 * UID_LENGTH));
+                String parent = getString(buf, pos + UID_LENGTH, UID_LENGTH);
+                next = parent.equals(NO_PARENT) ? null : parent;
+                if (next == null) {
+                    return;
+                }
+            }
+        }
+        while (next != null) {
+            Commit c = Commit.read(next);
+            System.out.println(c);
+            next = c.getParentID();
+        }
+    }
+
+    /** Returns the string of LENGTH bytes at the specified position of BUF. */
+    private static String getString(ByteBuffer buf, int pos, int length) {
+        byte[] bytes = new byte[length];
+        buf.get(pos, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Appends a record of the specified type and payload to the log file. */
+    private void append(byte type, String payload) {
+        boolean empty = !file.exists() || file.length() == 0;
+        byte[] record = record(type, payload, empty);
+        try {
+            Files.write(file.toPath(), record,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            Trace.wrote(file, record.length);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Returns the bytes of a record of the specified type and payload, preceded by the magic
+     *  number if FIRST. */
+    private static byte[] record(byte type, String payload, boolean first) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate((first ? 4 : 0) + bytes.length + FOOTER_SIZE);
+        if (first) {
+            buf.putInt(MAGIC);
+        }
+        buf.put(bytes);
+        buf.putInt(bytes.length);
+        buf.put(type);
+        return buf.array();
+    }
+
+}
@@ -0,0 +1,135 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static gitlet.Utils.*;
+
+/**
+ * Splits the contents of large files into content-defined chunks with the FastCDC algorithm,
+ * and encodes the lists of chunks standing for their blobs. A rolling gear hash is computed
+ * over the bytes of each chunk, and the chunk ends where the hash matches a mask; since the
+ * hash only depends on the last 64 bytes, an edit in a file only changes the boundaries of
+ * the chunks around it, and every other chunk is found again, stored once.
+ * @author Yuhan Zhang
+ */
+public class Chunker {
+
+    /** Minimum size of the files split into chunks. */
+    static final long THRESHOLD = 1 << 22;
+    /** Minimum size of a chunk, no boundary is looked for before it. */
+    static final int MIN_SIZE = 1 << 16;
+    /** Size around which chunks are normalized. */
+    static final int AVERAGE_SIZE = 1 << 18;
+    /** Maximum size of a chunk. */
+    static final int MAX_SIZE = 1 << 20;
+    /** Magic number at the beginning of the stored bytes of a chunk list, "CHNK". */
+    static final byte[] MAGIC = {'C', 'H', 'N', 'K'};
+    /** Number of bytes of a raw UID in a chunk list. */
+    private static final int UID_BYTES = UID_LENGTH / 2;
+
+    /** Mask of the hash before the average size, harder to match than the average. */
+    private static final long MASK_SMALL = highBits(20);
+    /** Mask of the hash after the average size, easier to match than the average. */
+    private static final long MASK_LARGE = highBits(16);
+    /** Random values of each byte mixed into the gear hash, fixed across repositories. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Stream of the contents being split. */
+    private final InputStream in;
+    /** Bytes read from the stream and not yet returned as chunks. */
+    private final byte[] buffer = new byte[MAX_SIZE];
+    /** Number of bytes in the buffer. */
+    private int size;
+    /** Whether the whole stream has been read. */
+    private boolean ended;
+
+    /** Constructor of a chunker splitting the contents read from IN. */
+    public Chunker(InputStream in) {
+        this.in = in;
+    }
+
+    /** Returns the next chunk of the contents, or null once they have all been returned. */
+    public byte[] next() throws IOException {
+        if (!ended && size < MAX_SIZE) {
+            int read = in.readNBytes(buffer, size, MAX_SIZE - size);
+            size += read;
+            ended = size < MAX_SIZE;
+        }
+        if (size == 0) {
+            return null;
+        }
+        int cut = findBoundary(buffer, size);
+        byte[] chunk = Arrays.copyOf(buffer, cut);
+        System.arraycopy(buffer, cut, buffer, 0, size - cut);
+        size -= cut;
+        return chunk;
+    }
+
+    /** Returns the length of the chunk starting the first N bytes of BYTES. */
+    static int findBoundary(byte[] bytes, int n) {
+        if (n <= MIN_SIZE) {
+            return n;
+        }
+        int normal = Math.min(n, AVERAGE_SIZE);
+        int max = Math.min(n, MAX_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[bytes[i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < max; i += 1) {
+            hash = (hash << 1) + GEAR[bytes[i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return max;
+    }
+
+    /** Returns a mask of the highest BITS bits, those depending on the most bytes. */
+    private static long highBits(int bits) {
+        return -1L << (Long.SIZE - bits);
+    }
+
+    /** Returns the stored bytes of the list of the specified chunk UIDs. */
+    static byte[] encodeList(List<String> chunks) {
+        ByteBuffer buf = ByteBuffer.allocate(MAGIC.length + chunks.size() * UID_BYTES);
+        buf.put(MAGIC);
+        for (String uid : chunks) {
+            buf.put(hexToBytes(uid));
+        }
+        return buf.array();
+    }
+
+    /** Returns whether the stored BYTES of an object are those of a chunk list. */
+    static boolean isList(byte[] bytes) {
+        return bytes.length >= MAGIC.length
+                && Arrays.equals(bytes, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    /** Returns the chunk UIDs of the list of the specified stored BYTES. */
+    static List<String> decodeList(byte[] bytes) {
+        List<String> chunks = new ArrayList<>();
+        for (int i = MAGIC.length; i < bytes.length; i += UID_BYTES) {
+            chunks.add(bytesToHex(Arrays.copyOfRange(bytes, i, i + UID_BYTES)));
+        }
+        return chunks;
+    }
+
+}
@@ -0,0 +1,176 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Utils.*;
+
+/**
+ * Represents a compression codec of the stored bytes of objects. Encoded bytes start with
+ * a header of the byte 'G' and the id of the codec, so that objects written with different
+ * codecs (or before codecs existed, unencoded) coexist in a repository.
+ * The codec of a repository is chosen by the "compression" entry of its config file,
+ * being one of "deflate" (the default), "fast" or "none".
+ * @author Yuhan Zhang
+ */
+public class Codec {
+
+    /** First byte of the header of encoded bytes. */
+    private static final byte HEADER = 'G';
+    /** Length of the header of encoded bytes. */
+    private static final int HEADER_SIZE = 2;
+    /** Size of the buffers of encoding and decoding streams. */
+    private static final int BUFFER_SIZE = 65536;
+
+    /** Codec storing the bytes as they are. */
+    public static final Codec NONE = new Codec("none", 0, 0);
+    /** Codec compressing the bytes with Deflate at the default level. */
+    public static final Codec DEFLATE = new Codec("deflate", 1, Deflater.DEFAULT_COMPRESSION);
+    /** Codec compressing the bytes with Deflate at its fastest, lower-ratio level. */
+    public static final Codec FAST = new Codec("fast", 2, Deflater.BEST_SPEED);
+    /** All the codecs, indexed by their id. */
+    private static final Codec[] CODECS = {NONE, DEFLATE, FAST};
+
+    /** Name of this codec in the config file. */
+    private final String name;
+    /** Id of this codec in the header of encoded bytes. */
+    private final int id;
+    /** Deflate compression level of this codec. */
+    private final int level;
+
+    /** Constructor of a codec. */
+    private Codec(String name, int id, int level) {
+        this.name = name;
+        this.id = id;
+        this.level = level;
+    }
+
+    /** Returns the codec of the specified name. */
+    public static Codec forName(String name) {
+        for (Codec c : CODECS) {
+            if (c.name.equals(name)) {
+                return c;
+            }
+        }
+        throw error("Unknown compression codec %s.", name);
+    }
+
+    /** Returns the codec configured for the repository (.gitlet) at the specified
+     *  directory, or the default one if none is configured. */
+    public static Codec of(File gitletDir) {
+        String name = Config.get(gitletDir, "compression");
+        return name == null ? DEFLATE : forName(name);
+    }
+
+    /** Returns the BYTES encoded with this codec, header included. */
+    public byte[] encode(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + HEADER_SIZE);
+        out.write(HEADER);
+        out.write(id);
+        if (this == NONE) {
+            out.write(bytes, 0, bytes.length);
+            return out.toByteArray();
+        }
+        Deflater deflater = new Deflater(level);
+        deflater.setInput(bytes);
+        deflater.finish();
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buf);
+            out.write(buf, 0, n);
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /** Returns the BYTES decoded with the codec recorded in their header. Bytes without
+     *  a header were stored before codecs existed and are returned as they are. */
+    public static byte[] decode(byte[] bytes) {
+        if (bytes.length < HEADER_SIZE || bytes[0] != HEADER) {
+            return bytes;
+        }
+        if (bytes[1] == NONE.id) {
+            return Arrays.copyOfRange(bytes, HEADER_SIZE, bytes.length);
+        }
+        Inflater inflater = new Inflater();
+        inflater.setInput(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 2);
+        byte[] buf = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw error("Corrupted object.");
+                }
+                out.write(buf, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw error("Corrupted object.");
+        } finally {
+            inflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns a stream encoding the bytes written to it with this codec into OUT, after
+     *  writing the header. Closing the stream closes OUT. */
+    public OutputStream encoder(OutputStream out) throws IOException {
+        out.write(HEADER);
+        out.write(id);
+        if (this == NONE) {
+            return out;
+        }
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /** Returns a stream of the bytes read from IN decoded with the codec recorded in their
+     *  header, or as they are if there is no header. Closing the stream closes IN. */
+    public static InputStream decoder(InputStream in) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, HEADER_SIZE);
+        byte[] header = pushback.readNBytes(HEADER_SIZE);
+        if (header.length < HEADER_SIZE || header[0] != HEADER) {
+            pushback.unread(header);
+            return pushback;
+        }
+        if (header[1] == NONE.id) {
+            return pushback;
+        }
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(pushback, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /** Returns the name of the codec. */
+    public String getName() {
+        return this.name;
+    }
+
+}
@@ -1,8 +1,5 @@
 package gitlet;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -10,21 +7,25 @@ import static gitlet.Utils.*;
 import static gitlet.Repository.*;
 
 /**
- * Represents a gitlet commit object.
+ * Represents a gitlet commit object. The files tracked by a commit are held by its root
+ * tree (see Tree), whose UID the UID of the commit derives from.
  * @author Yuhan Zhang
  */
-public class Commit implements Serializable {
+public class Commit implements Dumpable {
 
-    /** Map of file tracked by this commit. */
-    private final Map<File, Blob> blobs = new HashMap<File, Blob>();
+    /** UID of the root tree of the files tracked by this commit. */
+    private String tree;
+    /** Map of file names tracked by this commit to the UIDs of their blobs, read lazily
+     *  from the tree. */
+    private transient Map<String, String> blobs;
     /** Message of this commit. */
     private final String message;
     /** Date of this commit. */
     private final Date date;
-    /** Parent of this commit. */
-    private final Commit parent;
-    /** Merged parent of this commit. */
-    private final Commit mergeParent;
+    /** UID of the parent of this commit. */
+    private final String parent;
+    /** UID of the merged parent of this commit. */
+    private final String mergeParent;
     /** UID of this commit. */
     private String UID;
 
@@ -40,134 +41,138 @@ public class Commit implements Serializable {
     public Commit(String message) {
         this.message = message;
         this.date = new Date();
-        this.parent = getCurrentCommit();
+        Commit p = getCurrentCommit();
+        this.parent = p.UID;
         this.mergeParent = null;
-        this.blobs.putAll(parent.blobs);
+        this.tree = p.tree;
     }
 
     /** Constructor of a merge commit. */
     public Commit(Branch current, Branch other) {
         this.message = String.format("Merged %s into %s.", other.getName(), current.getName());
         this.date = new Date();
-        this.parent = current.getCommit();
-        this.mergeParent = other.getCommit();
-        this.blobs.putAll(getIndex().getStaged());
+        this.parent = current.getCommitID();
+        this.mergeParent = other.getCommitID();
+        this.tree = current.getCommit().tree;
+    }
+
+    /** Constructor of a decoded commit of the specified fields. */
+    private Commit(String uid, String tree, String parent, String mergeParent, Date date,
+                   String message) {
+        this.UID = uid;
+        this.tree = tree;
+        this.parent = parent;
+        this.mergeParent = mergeParent;
+        this.date = date;
+        this.message = message;
+    }
+
+    /** Encodes the commit: its UID, the UID of its tree, the number of its parents followed
+     *  by their UIDs, its time in milliseconds and its message. */
+    void encode(ObjectFormat.Output out) {
+        out.writeUID(UID);
+        out.writeUID(tree);
+        out.writeVarint(parent == null ? 0 : mergeParent == null ? 1 : 2);
+        if (parent != null) {
+            out.writeUID(parent);
+        }
+        if (mergeParent != null) {
+            out.writeUID(mergeParent);
+        }
+        out.writeVarint(date.getTime());
+        out.writeString(message);
+    }
+
+    /** Returns the commit decoded from IN. */
+    static Commit decode(ObjectFormat.Input in) {
+        String uid = in.readUID();
+        String tree = in.readUID();
+        long parents = in.readVarint();
+        String parent = parents > 0 ? in.readUID() : null;
+        String mergeParent = parents > 1 ? in.readUID() : null;
+        Date date = new Date(in.readVarint());
+        return new Commit(uid, tree, parent, mergeParent, date, in.readString());
     }
 
     /** Creates and writes to the Commit object. */
     public void save() {
-        try {
-            if (!getPathFolder().exists()) {
-                getPathFolder().mkdir();
-            }
-            getPathFile().createNewFile();
-            writeObject(getPathFile(), this);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        saveTo(ObjectStore.local());
     }
 
-    /** Creates and writes the Commit object to the specified repository. */
-    public void saveTo(File dir) {
-        File pathFolder = join(dir, UID.substring(0, 2));
-        File pathFile = join(pathFolder, UID.substring(2));
-        try {
-            if (!pathFolder.exists()) {
-                pathFolder.mkdir();
-            }
-            pathFile.createNewFile();
-            writeObject(pathFile, this);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    /** Creates and writes the Commit object to the specified store, and indexes its UID. */
+    public void saveTo(ObjectStore store) {
+        store.write(UID, this);
+        new CommitIndex(store).add(UID);
+        new MessageIndex(store).add(this);
     }
 
     /** Commits and writes to the logs. */
     public void commit() {
-        // Checks the staging area unless initial or merge commit.
-        if (parent != null && mergeParent == null) {
-            checkCommit();
+        if (parent == null) {
+            tree = Tree.update(ObjectStore.local(), null, Collections.emptyMap());
+        } else {
+            applyIndex();
         }
         setUID();
         save();
         Branch b = getCurrentBranch();
         b.setCommit(this);
-        writeContents(b.getLogFile(),
-                this.toString() + "\n" + readContentsAsString(b.getLogFile()));
+        b.getLog().appendCommit(this);
     }
 
-    /** Checks the staging area to validate commit eligibility. */
-    public void checkCommit() {
+    /** Applies the changes of the staging area to the tree of the commit, only rewriting
+     *  the trees along the changed paths, and clears it. The staging area must not be clear,
+     *  except for merge commits. */
+    private void applyIndex() {
         Index idx = getIndex();
-        Map<File, Blob> staged = idx.getStaged();
-        Map<File, Blob> removed = idx.getRemoved();
-        if (staged.isEmpty() && removed.isEmpty()) {
+        if (idx.isClear() && mergeParent == null) {
             exit("No changes added to the commit.");
         }
-        for (File f : removed.keySet()) {
-            blobs.remove(f);
-        }
-        blobs.putAll(idx.getStaged());
+        tree = Tree.update(ObjectStore.local(), tree, idx.getChanges());
         idx.clear();
     }
 
-    /** Generates and sets the UID of the commit. */
+    /** Generates and sets the UID of the commit from its root tree. */
     public void setUID() {
         List<Object> vals = new ArrayList<Object>();
-        Set<File> files = blobs.keySet();
-        for (File f : files) {
-            vals.add(f.toString());
-        }
+        vals.add(tree);
         if (parent != null) {
-            vals.add(parent.toString());
+            vals.add(parent);
+        }
+        if (mergeParent != null) {
+            vals.add(mergeParent);
         }
         vals.add(message);
         vals.add(date.toString());
         this.UID = sha1(vals);
     }
 
-    /** Finds all commits ever made and returns them as a set. */
-    public static Set<Commit> findAll() {
-        List<String> dirs = subDirNamesIn(OBJECTS_DIR);
-        Set<Commit> commits = new HashSet<Commit>();
-        if (dirs != null) {
-            for (String dir : dirs) {
-                File subDir = join(OBJECTS_DIR, dir);
-                List<String> files = plainFilenamesIn(subDir);
-                if (files == null) {
-                    continue;
-                }
-                for (String file: files) {
-                    commits.add(readObject(join(subDir, file), Commit.class));
-                }
-            }
-        }
-        return commits;
+    /** Returns the Commit object of the specified full UID from the local repository. */
+    public static Commit read(String commitID) {
+        return ObjectStore.local().read(commitID, Commit.class);
     }
 
     /** Returns the Commit object of the specified UID (or abbreviation). */
     public static Commit find(String commitID) {
-        Commit commit = null;
-        for (Commit c : findAll()) {
-            if (c.getUID().startsWith(commitID)) {
-                commit = c;
-                break;
-            }
-        }
+        List<String> ids = new CommitIndex(ObjectStore.local()).find(commitID, 2);
         // If no commit with the given id exists.
-        if (commit == null) {
+        if (ids.isEmpty()) {
             exit("No commit with that id exists.");
         }
-        return commit;
+        // If the abbreviation matches more than one commit.
+        if (ids.size() > 1) {
+            exit("The commit id is ambiguous.");
+        }
+        return read(ids.get(0));
     }
 
     /** Finds the ids of all commits with the specified message and returns as a set. */
     public static Set<String> findId(String message) {
-        Set<Commit> commits = findAll();
-        Set<String> ids = new HashSet<String>();
-        for (Commit c : commits) {
-            if (c.message.equals(message)) {
-                ids.add(c.getUID());
+        Set<String> ids = new TreeSet<String>();
+        for (String uid : new MessageIndex(ObjectStore.local()).find(message)) {
+            // Guards against the messages sharing the same hash.
+            if (read(uid).message.equals(message)) {
+                ids.add(uid);
             }
         }
         if (ids.size() == 0) {
@@ -176,60 +181,73 @@ public class Commit implements Serializable {
         return ids;
     }
 
-    /** Deletes all the files (not the blobs) tracked by the commit.
-     *  The parameter is for checking whether any untracked files would be overwritten. */
-    public void deleteTrackedFiles(Commit commit) {
-        getIndex().checkUntracked(commit);
-        for (Blob b : blobs.values()) {
-            b.delete();
-        }
+    /** Returns whether the specified file is tracked by the commit. */
+    public boolean isTracked(String fileName) {
+        return getBlobID(fileName) != null;
     }
 
-    /** Overwrites all the files (not the blobs) tracked by the commit. */
-    public void overwriteTrackedFiles() {
-        for (Blob b : blobs.values()) {
-            b.overwrite();
+    /** Returns the UID of the blob of the file specified, or null if it is not tracked.
+     *  Only the trees along its path are read. */
+    public String getBlobID(String fileName) {
+        if (blobs != null) {
+            return blobs.get(fileName);
         }
+        return Tree.find(ObjectStore.local(), tree, fileName);
     }
 
-    /** Returns whether the specified file is tracked by the commit. */
-    public boolean isTracked(File file) {
-        return this.blobs.containsKey(file);
+    /** Returns the Blob of the file specified, or null if it is not tracked. */
+    public Blob getBlob(String fileName) {
+        String blobID = getBlobID(fileName);
+        return blobID == null ? null : Blob.find(blobID);
     }
 
-    /** Returns the Blob of the file specified. */
-    public Blob getBlob(File file) {
-        return blobs.get(file);
+    /** Returns the map of file names to blob UIDs of the commit, read from all its trees. */
+    public Map<String, String> getBlobs() {
+        if (blobs == null) {
+            blobs = new TreeMap<>();
+            Tree.flatten(ObjectStore.local(), tree, "", blobs);
+        }
+        return this.blobs;
     }
 
-    /** Returns the map of blobs of the commit. */
-    public Map<File, Blob> getBlobs() {
-        return this.blobs;
+    /** Returns the UID of the root tree of the commit. */
+    public String getTree() {
+        return this.tree;
     }
 
-    /** Returns the parent of the commit. */
+    /** Returns the parent of the commit, loaded from the local repository. */
     public Commit getParent() {
-        return this.parent;
+        return parent == null ? null : read(parent);
     }
 
-    /** Returns the merged (second) parent of the commit. */
+    /** Returns the merged (second) parent of the commit, loaded from the local repository. */
     public Commit getMergeParent() {
+        return mergeParent == null ? null : read(mergeParent);
+    }
+
+    /** Returns the UID of the parent of the commit. */
+    public String getParentID() {
+        return this.parent;
+    }
+
+    /** Returns the UID of the merged (second) parent of the commit. */
+    public String getMergeParentID() {
         return this.mergeParent;
     }
 
-    /** Returns the UID of the commit. */
-    public String getUID() {
-        return this.UID;
+    /** Returns the message of the commit. */
+    public String getMessage() {
+        return this.message;
     }
 
-    /** Returns the path to the objs subfolder. */
-    public File getPathFolder() {
-        return join(OBJECTS_DIR, this.UID.substring(0, 2));
+    /** Returns the date of the commit. */
+    public Date getDate() {
+        return this.date;
     }
 
-    /** Returns the path to the file holding the commit object. */
-    public File getPathFile() {
-        return join(getPathFolder(), this.UID.substring(2));
+    /** Returns the UID of the commit. */
+    public String getUID() {
+        return this.UID;
     }
 
     /** Returns the commit as a log of String. */
@@ -240,11 +258,17 @@ public class Commit implements Serializable {
         log.append("===\ncommit ").append(UID).append("\n");
         if (mergeParent != null) {
             log.append("Merge: ");
-            log.append(parent.UID, 0, 7).append(" ");
-            log.append(mergeParent.UID, 0, 7).append("\n");
+            log.append(parent, 0, 7).append(" ");
+            log.append(mergeParent, 0, 7).append("\n");
         }
         log.append("Date: ").append(d.format(date)).append("\n").append(message).append("\n");
         return log.toString();
     }
 
+    /** Prints the fields of the commit. */
+    @Override
+    public void dump() {
+        System.out.printf("commit %s%ntree %s%nparent %s%nmerge parent %s%ndate %s%nmessage %s%n",
+                UID, tree, parent, mergeParent, date, message);
+    }
 }
@@ -0,0 +1,560 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static gitlet.Utils.*;
+import static gitlet.CommitIndex.*;
+
+/**
+ * Represents the commit-graph of a repository, holding the parents of each commit as
+ * integer positions together with its generation number, so that ancestry is walked without
+ * reading any commit. Commits are numbered in the order they are added to the graph, which
+ * is always after their parents, and keep their position for good.
+ * <p>
+ * The graph file starts with a 256-entry fan-out table and the sorted raw UIDs of the
+ * commits like the commit index, followed by the position of each of them. Then comes an
+ * entry for each position: the raw UID, the positions of its parent and its merge parent
+ * (-1 if none), its generation number (1 for a root commit, otherwise one more than the
+ * greatest of its parents) and its timestamp. Last come all the positions from the newest
+ * commit to the oldest by timestamp, so that the newest commits are listed without sorting.
+ * A graph file of another layout is dropped, and the graph built again from the commits.
+ * <p>
+ * Every few commits, the bitmap of all the commits reachable from one is appended to the
+ * bitmap file, so that walks of the ancestry stop as soon as they meet a bitmap.
+ * <p>
+ * The graph is brought up to date on demand: commits missing from it are read from the
+ * store, walking back from the requested heads until the commits already in the graph. The
+ * graph of a repository which is only read from, such as a remote being fetched from, keeps
+ * the commits it adds in memory and never writes the files of that repository.
+ * @author Yuhan Zhang
+ */
+public class CommitGraph {
+
+    /** Number of bytes of the entry of a commit. */
+    private static final int DATA_SIZE = ENTRY_SIZE + 20;
+    /** Position of a missing parent. */
+    private static final int NONE = -1;
+    /** Flag of the commits reachable from the first head. */
+    private static final byte FIRST = 1;
+    /** Flag of the commits reachable from the second head. */
+    private static final byte SECOND = 2;
+    /** Number of positions between two commits given a bitmap. */
+    private static final int BITMAP_SPACING = 256;
+
+    /**
+     * Represents a commit to be added to the graph.
+     */
+    public static class Entry {
+        /** UID of the commit. */
+        private final String uid;
+        /** UID of the parent of the commit, null if none. */
+        private final String parentID;
+        /** UID of the merge parent of the commit, null if none. */
+        private final String mergeParentID;
+        /** Timestamp of the commit. */
+        private final long timestamp;
+
+        /** Constructor of the entry of a commit. */
+        public Entry(String uid, String parentID, String mergeParentID, long timestamp) {
+            this.uid = uid;
+            this.parentID = parentID;
+            this.mergeParentID = mergeParentID;
+            this.timestamp = timestamp;
+        }
+
+        /** Constructor of the entry of the specified commit. */
+        public Entry(Commit c) {
+            this(c.getUID(), c.getParentID(), c.getMergeParentID(), c.getDate().getTime());
+        }
+    }
+
+    /** Store holding the commits of the graph. */
+    private final ObjectStore store;
+    /** Absolute path to the graph file. */
+    private final File file;
+    /** Absolute path to the bitmap file. */
+    private final File bitmapFile;
+    /** Whether the commits added to the graph are written to its files. */
+    private final boolean writable;
+    /** Mapped graph file, or the graph in memory if it is not writable, null if there is no
+     *  graph yet. */
+    private ByteBuffer buf;
+    /** Number of commits in the graph. */
+    private int count;
+    /** Bitmaps of reachable commits by position, null until first used. */
+    private Map<Integer, Bitmap> bitmaps;
+
+    /** Constructor of the commit-graph of the specified store, written to its files. */
+    public CommitGraph(ObjectStore store) {
+        this(store, true);
+    }
+
+    /** Constructor of the commit-graph of the specified store, whose files are only read
+     *  unless WRITABLE, the commits added to it being kept in memory otherwise. */
+    public CommitGraph(ObjectStore store, boolean writable) {
+        this.store = store;
+        this.writable = writable;
+        this.file = join(store.getDirectory(), "commit-graph");
+        this.bitmapFile = join(store.getDirectory(), "commit-bitmaps");
+        map();
+        // Bitmaps only make sense with the positions of the graph they were written for.
+        if (buf == null && bitmapFile.exists()) {
+            if (writable) {
+                bitmapFile.delete();
+            } else {
+                bitmaps = new HashMap<>();
+            }
+        }
+    }
+
+    /** Returns the UID of the latest common ancestor of the two specified commits, or null
+     *  if they have none. Commits are visited in decreasing generation order from both
+     *  heads, painting each one with the heads it is reachable from, and the first commit
+     *  reachable from both is the answer: no commit of a lower generation can be its
+     *  descendant, so only the commits newer than the ancestor are ever visited. */
+    public String findMergeBase(String first, String second) {
+        update(first, second);
+        int a = find(first);
+        int b = find(second);
+        byte[] flags = new byte[count];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(byGeneration());
+        flags[a] |= FIRST;
+        flags[b] |= SECOND;
+        queue.add(a);
+        if (a != b) {
+            queue.add(b);
+        }
+        while (!queue.isEmpty()) {
+            int pos = queue.poll();
+            if (flags[pos] == (FIRST | SECOND)) {
+                return getUID(pos);
+            }
+            for (int p : new int[]{getParent(pos), getMergeParent(pos)}) {
+                if (p == NONE || (flags[p] & flags[pos]) == flags[pos]) {
+                    continue;
+                }
+                // A parent of a lower generation cannot have been visited yet.
+                if (flags[p] == 0) {
+                    queue.add(p);
+                }
+                flags[p] |= flags[pos];
+            }
+        }
+        return null;
+    }
+
+    /** Returns whether the commit ANCESTOR is reachable from the commit DESCENDANT. The
+     *  walk skips the commits of a lower generation than the ancestor, and answers from
+     *  the bitmap of any commit it meets instead of walking on from it. */
+    public boolean isAncestor(String ancestor, String descendant) {
+        update(descendant);
+        int a = find(ancestor);
+        int d = find(descendant);
+        if (a == NONE || d == NONE) {
+            return false;
+        }
+        int generation = getGeneration(a);
+        Set<Integer> visited = new HashSet<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(d);
+        while (!stack.isEmpty()) {
+            int pos = stack.pop();
+            if (pos == a) {
+                return true;
+            }
+            if (pos == NONE || getGeneration(pos) <= generation || !visited.add(pos)) {
+                continue;
+            }
+            Bitmap bitmap = getBitmaps().get(pos);
+            if (bitmap != null) {
+                if (bitmap.contains(a)) {
+                    return true;
+                }
+                continue;
+            }
+            stack.push(getParent(pos));
+            stack.push(getMergeParent(pos));
+        }
+        return false;
+    }
+
+    /** Returns the bitmap of the commits reachable from the specified commit, included. */
+    public Bitmap reachable(String uid) {
+        update(uid);
+        int pos = find(uid);
+        return pos == NONE ? Bitmap.EMPTY : reachable(pos);
+    }
+
+    /** Returns the UIDs of the commits of the specified positions. */
+    public List<String> getUIDs(Bitmap positions) {
+        List<String> uids = new ArrayList<>();
+        for (int pos : positions.toArray()) {
+            uids.add(getUID(pos));
+        }
+        return uids;
+    }
+
+    /** Adds the specified commits and all their ancestors missing from the graph. */
+    public void update(String... heads) {
+        // Reads the missing commits, stopping at the ones in the graph, and lists them
+        // after all their parents.
+        List<Entry> added = new ArrayList<>();
+        Map<String, Entry> read = new HashMap<>();
+        Set<String> listed = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>(Arrays.asList(heads));
+        while (!stack.isEmpty()) {
+            String uid = stack.peek();
+            if (!isMissing(uid, listed)) {
+                stack.pop();
+                continue;
+            }
+            Entry e = read.computeIfAbsent(uid, id -> new Entry(store.read(id, Commit.class)));
+            boolean ready = true;
+            for (String p : new String[]{e.parentID, e.mergeParentID}) {
+                if (isMissing(p, listed)) {
+                    stack.push(p);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                listed.add(uid);
+                added.add(e);
+            }
+        }
+        append(added);
+    }
+
+    /** Adds all the specified commits missing from the graph, such as every commit of the
+     *  commit index, and their ancestors. */
+    public void updateAll(Iterable<String> uids) {
+        List<String> missing = new ArrayList<>();
+        for (String uid : uids) {
+            if (find(uid) == NONE) {
+                missing.add(uid);
+            }
+        }
+        update(missing.toArray(new String[0]));
+    }
+
+    /** Returns the number of commits in the graph. */
+    public int size() {
+        return count;
+    }
+
+    /** Returns an iterator over the UIDs of all the commits of the graph from the newest to
+     *  the oldest, ending before the first commit older than the timestamp SINCE. The
+     *  positions are read in the order held by the graph file, one at a time, so that only
+     *  the commits iterated over are looked at, and no commit is read. */
+    public Iterator<String> newestFirst(long since) {
+        return new Iterator<String>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < count && getTimestamp(getNewest(next)) >= since;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                next += 1;
+                return getUID(getNewest(next - 1));
+            }
+        };
+    }
+
+    /** Returns whether the commit of the specified UID is to be added to the graph, being
+     *  stored but neither in the graph nor LISTED to be added yet. */
+    private boolean isMissing(String uid, Set<String> listed) {
+        return uid != null && !listed.contains(uid) && find(uid) == NONE
+                && store.contains(uid);
+    }
+
+    /** Appends the specified commits to the graph, and writes it if it is writable. The
+     *  parents of each commit have to be either in the graph or before it in the list,
+     *  otherwise they are left out. */
+    public void append(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        int total = count + entries.size();
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < entries.size(); i += 1) {
+            positions.put(entries.get(i).uid, count + i);
+        }
+
+        // Sorts the new commits by UID, then merges them with the sorted UIDs of the graph.
+        Integer[] order = new Integer[entries.size()];
+        byte[][] raw = new byte[entries.size()][];
+        for (int i = 0; i < order.length; i += 1) {
+            order[i] = i;
+            raw[i] = hexToBytes(entries.get(i).uid);
+        }
+        Arrays.sort(order, (i, j) -> compare(raw[i], raw[j]));
+        ByteBuffer out = ByteBuffer.allocate(
+                HEADER_SIZE + total * (ENTRY_SIZE + 4 + DATA_SIZE + 4));
+        byte[] sortedIDs = new byte[total * ENTRY_SIZE];
+        int[] sortedPositions = new int[total];
+        byte[] entry = new byte[ENTRY_SIZE];
+        int i = 0;
+        int j = 0;
+        for (int n = 0; n < total; n += 1) {
+            if (i < count) {
+                buf.get(HEADER_SIZE + i * ENTRY_SIZE, entry);
+            }
+            if (j >= order.length || (i < count && compare(entry, raw[order[j]]) < 0)) {
+                System.arraycopy(entry, 0, sortedIDs, n * ENTRY_SIZE, ENTRY_SIZE);
+                sortedPositions[n] = buf.getInt(HEADER_SIZE + count * ENTRY_SIZE + i * 4);
+                i += 1;
+            } else {
+                System.arraycopy(raw[order[j]], 0, sortedIDs, n * ENTRY_SIZE, ENTRY_SIZE);
+                sortedPositions[n] = count + order[j];
+                j += 1;
+            }
+        }
+        int[] fanout = new int[FANOUT_SIZE];
+        for (int n = 0; n < total; n += 1) {
+            fanout[sortedIDs[n * ENTRY_SIZE] & 0xff] += 1;
+        }
+        int sum = 0;
+        for (int n : fanout) {
+            sum += n;
+            out.putInt(sum);
+        }
+        out.put(sortedIDs);
+        for (int pos : sortedPositions) {
+            out.putInt(pos);
+        }
+
+        // Copies the entries of the graph, then appends the new ones.
+        if (count > 0) {
+            ByteBuffer old = buf.duplicate();
+            old.position(dataOffset(0));
+            old.limit(dataOffset(count));
+            out.put(old);
+        }
+        int[] generations = new int[entries.size()];
+        for (int n = 0; n < entries.size(); n += 1) {
+            Entry e = entries.get(n);
+            int parent = positionOf(e.parentID, positions);
+            int mergeParent = positionOf(e.mergeParentID, positions);
+            generations[n] = Math.max(generationOf(parent, generations),
+                    generationOf(mergeParent, generations)) + 1;
+            out.put(raw[n]);
+            out.putInt(parent);
+            out.putInt(mergeParent);
+            out.putInt(generations[n]);
+            out.putLong(e.timestamp);
+        }
+
+        // Merges the new positions by timestamp into the ordered positions of the graph.
+        // Children come after their parents in the graph, so they go first on a tie.
+        Integer[] byTime = new Integer[entries.size()];
+        for (int n = 0; n < byTime.length; n += 1) {
+            byTime[n] = n;
+        }
+        Arrays.sort(byTime, Comparator.comparingLong((Integer n) -> -entries.get(n).timestamp)
+                .thenComparingInt(n -> -n));
+        i = 0;
+        j = 0;
+        while (i < count || j < byTime.length) {
+            if (j >= byTime.length || (i < count
+                    && getTimestamp(getNewest(i)) > entries.get(byTime[j]).timestamp)) {
+                out.putInt(getNewest(i));
+                i += 1;
+            } else {
+                out.putInt(count + byTime[j]);
+                j += 1;
+            }
+        }
+        int oldCount = count;
+        if (writable) {
+            replaceContents(file, out.array());
+            map();
+        } else {
+            buf = out;
+            count = total;
+        }
+        writeBitmaps(oldCount);
+    }
+
+    /** Returns the position of the commit of the specified UID, looking it up in the graph
+     *  then in the positions of the commits being appended, or -1 if it is absent. */
+    private int positionOf(String uid, Map<String, Integer> positions) {
+        int pos = find(uid);
+        return pos != NONE ? pos : positions.getOrDefault(uid, NONE);
+    }
+
+    /** Returns the generation of the commit at the specified position, looking it up in the
+     *  graph or in the GENERATIONS of the commits being appended, or 0 if it is absent. */
+    private int generationOf(int pos, int[] generations) {
+        if (pos == NONE) {
+            return 0;
+        }
+        return pos < count ? getGeneration(pos) : generations[pos - count];
+    }
+
+    /** Adds the bitmaps of the selected commits from the specified position on, appending
+     *  them to the bitmap file if the graph is writable. */
+    private void writeBitmaps(int from) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes))) {
+            int first = (from + BITMAP_SPACING - 1) / BITMAP_SPACING * BITMAP_SPACING;
+            for (int pos = first; pos < count; pos += BITMAP_SPACING) {
+                Bitmap bitmap = reachable(pos);
+                getBitmaps().put(pos, bitmap);
+                out.writeInt(pos);
+                bitmap.write(out);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (!writable || bytes.size() == 0) {
+            return;
+        }
+        try {
+            Files.write(bitmapFile.toPath(), bytes.toByteArray(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            Trace.wrote(bitmapFile, bytes.size());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Returns the bitmap of the commits reachable from the specified position, walking
+     *  back until the commits having a bitmap. */
+    private Bitmap reachable(int start) {
+        Bitmap result = Bitmap.EMPTY;
+        Set<Integer> visited = new HashSet<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            int pos = stack.pop();
+            if (pos == NONE || !visited.add(pos)) {
+                continue;
+            }
+            Bitmap bitmap = getBitmaps().get(pos);
+            if (bitmap != null) {
+                result = result.or(bitmap);
+                continue;
+            }
+            stack.push(getParent(pos));
+            stack.push(getMergeParent(pos));
+        }
+        int[] walked = new int[visited.size()];
+        int n = 0;
+        for (int pos : visited) {
+            walked[n] = pos;
+            n += 1;
+        }
+        return result.or(Bitmap.of(walked));
+    }
+
+    /** Returns the bitmaps of the graph by position, reading them on first use. */
+    private Map<Integer, Bitmap> getBitmaps() {
+        if (bitmaps == null) {
+            bitmaps = new HashMap<>();
+            if (bitmapFile.exists()) {
+                ByteBuffer in = mapContents(bitmapFile);
+                while (in.hasRemaining()) {
+                    int pos = in.getInt();
+                    bitmaps.put(pos, Bitmap.read(in));
+                }
+            }
+        }
+        return bitmaps;
+    }
+
+    /** Returns the comparator of positions by decreasing generation, then timestamp. */
+    private Comparator<Integer> byGeneration() {
+        return Comparator.comparingInt((Integer pos) -> -getGeneration(pos))
+                .thenComparingLong(pos -> -getTimestamp(pos))
+                .thenComparingInt(pos -> pos);
+    }
+
+    /** Returns the position of the commit of the specified UID, or -1 if it is absent. */
+    private int find(String uid) {
+        if (buf == null || uid == null) {
+            return NONE;
+        }
+        int firstByte = Integer.parseInt(uid.substring(0, 2), 16);
+        int lo = firstByte == 0 ? 0 : buf.getInt((firstByte - 1) * 4);
+        int hi = buf.getInt(firstByte * 4);
+        byte[] key = hexToBytes(uid);
+        int i = search(buf, HEADER_SIZE, lo, hi, key);
+        if (i >= hi) {
+            return NONE;
+        }
+        byte[] entry = new byte[ENTRY_SIZE];
+        buf.get(HEADER_SIZE + i * ENTRY_SIZE, entry);
+        if (compare(entry, key) != 0) {
+            return NONE;
+        }
+        return buf.getInt(HEADER_SIZE + count * ENTRY_SIZE + i * 4);
+    }
+
+    /** Returns the UID of the commit at the specified position. */
+    private String getUID(int pos) {
+        byte[] entry = new byte[ENTRY_SIZE];
+        buf.get(dataOffset(pos), entry);
+        return bytesToHex(entry);
+    }
+
+    /** Returns the position of the parent of the commit at the specified position. */
+    private int getParent(int pos) {
+        return buf.getInt(dataOffset(pos) + ENTRY_SIZE);
+    }
+
+    /** Returns the position of the merge parent of the commit at the specified position. */
+    private int getMergeParent(int pos) {
+        return buf.getInt(dataOffset(pos) + ENTRY_SIZE + 4);
+    }
+
+    /** Returns the generation number of the commit at the specified position. */
+    private int getGeneration(int pos) {
+        return buf.getInt(dataOffset(pos) + ENTRY_SIZE + 8);
+    }
+
+    /** Returns the timestamp of the commit at the specified position. */
+    private long getTimestamp(int pos) {
+        return buf.getLong(dataOffset(pos) + ENTRY_SIZE + 12);
+    }
+
+    /** Returns the position of the commit which is the I-th newest by timestamp. */
+    private int getNewest(int i) {
+        return buf.getInt(dataOffset(count) + i * 4);
+    }
+
+    /** Returns the offset of the entry of the commit at the specified position. */
+    private int dataOffset(int pos) {
+        return HEADER_SIZE + count * (ENTRY_SIZE + 4) + pos * DATA_SIZE;
+    }
+
+    /** Maps the graph file into memory if it exists, dropping it if it is not of the
+     *  layout of the graph. */
+    private void map() {
+        if (file.exists()) {
+            buf = mapContents(file);
+            count = buf.getInt((FANOUT_SIZE - 1) * 4);
+            if (buf.limit() != dataOffset(count) + count * 4) {
+                buf = null;
+                count = 0;
+                if (writable) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,344 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static gitlet.Utils.*;
+
+/**
+ * Represents the sorted index of all commit UIDs in a repository, used to resolve
+ * abbreviated UIDs without reading any commit. Like the .idx files of git packs,
+ * the index file starts with a 256-entry fan-out table, where entry b is the number
+ * of UIDs whose first byte is at most b, followed by the sorted 20-byte raw UIDs.
+ * Rewriting the whole sorted file for every new commit would cost a time linear in the
+ * number of commits, so new UIDs are appended unsorted to a small pending file instead,
+ * which lookups scan as well; it is merged into the sorted file once it holds more than
+ * MERGE_THRESHOLD UIDs, and on repack.
+ * @author Yuhan Zhang
+ */
+public class CommitIndex implements Iterable<String> {
+
+    /** Number of entries in the fan-out table. */
+    static final int FANOUT_SIZE = 256;
+    /** Number of bytes of the fan-out table. */
+    static final int HEADER_SIZE = FANOUT_SIZE * 4;
+    /** Number of bytes of a raw UID. */
+    static final int ENTRY_SIZE = UID_LENGTH / 2;
+    /** Number of pending UIDs beyond which they are merged into the sorted file. */
+    private static final int MERGE_THRESHOLD = 1024;
+
+    /** Store holding the commits indexed. */
+    private final ObjectStore store;
+    /** Absolute path to the index file. */
+    private final File file;
+    /** Absolute path to the file of the pending UIDs, appended unsorted. */
+    private final File pendingFile;
+
+    /** Constructor of the commit index of the specified store. */
+    public CommitIndex(ObjectStore store) {
+        this.store = store;
+        this.file = join(store.getDirectory(), "commit-index");
+        this.pendingFile = join(store.getDirectory(), "commit-index-pending");
+    }
+
+    /** Adds the specified commit UID into the index. */
+    public void add(String commitID) {
+        addAll(Collections.singletonList(commitID));
+    }
+
+    /** Adds the specified commit UIDs into the index, appending those not indexed yet to
+     *  the pending file, or merging them all into the sorted file past the threshold. */
+    public void addAll(Collection<String> commitIDs) {
+        if (!file.exists()) {
+            rebuild();
+            return;
+        }
+        MappedByteBuffer buf = mapContents(file);
+        Set<String> pending = readPending();
+        ByteBuffer added = ByteBuffer.allocate(commitIDs.size() * ENTRY_SIZE);
+        for (String uid : commitIDs) {
+            byte[] entry = hexToBytes(uid);
+            if (!isIndexed(buf, entry) && pending.add(uid)) {
+                added.put(entry);
+            }
+        }
+        if (added.position() == 0) {
+            return;
+        }
+        if (pending.size() > MERGE_THRESHOLD) {
+            mergeAll(pending);
+            return;
+        }
+        try {
+            Files.write(pendingFile.toPath(), Arrays.copyOf(added.array(), added.position()),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            Trace.wrote(pendingFile, added.position());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Merges the pending UIDs into the sorted index file, and deletes the pending file. */
+    public void merge() {
+        if (!pendingFile.exists()) {
+            return;
+        }
+        if (!file.exists()) {
+            rebuild();
+            return;
+        }
+        mergeAll(readPending());
+    }
+
+    /** Merges the specified commit UIDs into the sorted index file, rewriting it once,
+     *  then deletes the pending file. */
+    private void mergeAll(Collection<String> commitIDs) {
+        List<byte[]> ids = new ArrayList<>();
+        for (String uid : commitIDs) {
+            ids.add(hexToBytes(uid));
+        }
+        ids.sort(CommitIndex::compare);
+
+        // Merges the new UIDs into the sorted UIDs of the index, skipping the indexed ones.
+        byte[] entries = readEntries();
+        ByteBuffer updated = ByteBuffer.allocate(entries.length + ids.size() * ENTRY_SIZE);
+        int pos = 0;
+        for (byte[] entry : ids) {
+            int next = search(ByteBuffer.wrap(entries), 0, pos, entries.length / ENTRY_SIZE,
+                    entry);
+            updated.put(entries, pos * ENTRY_SIZE, (next - pos) * ENTRY_SIZE);
+            pos = next;
+            boolean indexed = pos < entries.length / ENTRY_SIZE
+                    && compare(entries, pos * ENTRY_SIZE, entry) == 0;
+            int last = updated.position() - ENTRY_SIZE;
+            boolean duplicate = last >= 0
+                    && compare(updated.array(), last, entry) == 0;
+            if (!indexed && !duplicate) {
+                updated.put(entry);
+            }
+        }
+        updated.put(entries, pos * ENTRY_SIZE, entries.length - pos * ENTRY_SIZE);
+        if (updated.position() != entries.length) {
+            write(Arrays.copyOf(updated.array(), updated.position()));
+        }
+        pendingFile.delete();
+    }
+
+    /** Regenerates the index from all commits in the store, told from the type of each
+     *  object without reading it. */
+    public void rebuild() {
+        List<byte[]> ids = new ArrayList<>();
+        for (String uid : store.list()) {
+            if (store.typeOf(uid) == ObjectFormat.COMMIT) {
+                ids.add(hexToBytes(uid));
+            }
+        }
+        ids.sort(CommitIndex::compare);
+        byte[] entries = new byte[ids.size() * ENTRY_SIZE];
+        for (int i = 0; i < ids.size(); i += 1) {
+            System.arraycopy(ids.get(i), 0, entries, i * ENTRY_SIZE, ENTRY_SIZE);
+        }
+        write(entries);
+        pendingFile.delete();
+    }
+
+    /** Returns at most LIMIT commit UIDs starting with the specified prefix, in order,
+     *  among the sorted and the pending UIDs. */
+    public List<String> find(String prefix, int limit) {
+        List<String> ids = new ArrayList<>();
+        if (prefix.isEmpty() || prefix.length() > UID_LENGTH
+                || !prefix.matches("[0-9a-fA-F]+")) {
+            return ids;
+        }
+        if (!file.exists()) {
+            rebuild();
+        }
+        prefix = prefix.toLowerCase();
+        MappedByteBuffer buf = mapContents(file);
+        int count = buf.getInt((FANOUT_SIZE - 1) * 4);
+
+        // Narrows down the range with the fan-out table.
+        int firstByte;
+        int lastByte;
+        if (prefix.length() >= 2) {
+            firstByte = Integer.parseInt(prefix.substring(0, 2), 16);
+            lastByte = firstByte;
+        } else {
+            firstByte = Integer.parseInt(prefix + "0", 16);
+            lastByte = firstByte + 15;
+        }
+        int lo = firstByte == 0 ? 0 : buf.getInt((firstByte - 1) * 4);
+        int hi = buf.getInt(lastByte * 4);
+
+        // Binary searches the first UID not less than the prefix and scans the matches.
+        StringBuilder lowest = new StringBuilder(prefix);
+        while (lowest.length() < UID_LENGTH) {
+            lowest.append('0');
+        }
+        int pos = search(buf, HEADER_SIZE, lo, hi, hexToBytes(lowest.toString()));
+        SortedSet<String> found = new TreeSet<>();
+        byte[] entry = new byte[ENTRY_SIZE];
+        for (int i = pos; i < count && found.size() < limit; i += 1) {
+            buf.get(HEADER_SIZE + i * ENTRY_SIZE, entry);
+            String uid = bytesToHex(entry);
+            if (!uid.startsWith(prefix)) {
+                break;
+            }
+            found.add(uid);
+        }
+        for (String uid : readPending()) {
+            if (uid.startsWith(prefix)) {
+                found.add(uid);
+            }
+        }
+        for (String uid : found) {
+            if (ids.size() == limit) {
+                break;
+            }
+            ids.add(uid);
+        }
+        return ids;
+    }
+
+    /** Returns the number of commit UIDs in the index, counting the pending ones. */
+    public int size() {
+        if (!file.exists()) {
+            rebuild();
+        }
+        int count = mapContents(file).getInt((FANOUT_SIZE - 1) * 4);
+        return count + (int) (pendingFile.length() / ENTRY_SIZE);
+    }
+
+    /** Returns an iterator streaming all the commit UIDs in the index in sorted order,
+     *  reading one entry at a time from the mapped index file, merged with the sorted
+     *  pending UIDs. */
+    @Override
+    public Iterator<String> iterator() {
+        if (!file.exists()) {
+            rebuild();
+        }
+        MappedByteBuffer buf = mapContents(file);
+        int count = buf.getInt((FANOUT_SIZE - 1) * 4);
+        List<String> pending = new ArrayList<>(new TreeSet<>(readPending()));
+        return new Iterator<String>() {
+            private int pos = 0;
+            private int pendingPos = 0;
+
+            @Override
+            public boolean hasNext() {
+                return pos < count || pendingPos < pending.size();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String indexed = null;
+                if (pos < count) {
+                    byte[] entry = new byte[ENTRY_SIZE];
+                    buf.get(HEADER_SIZE + pos * ENTRY_SIZE, entry);
+                    indexed = bytesToHex(entry);
+                }
+                if (pendingPos < pending.size()
+                        && (indexed == null || pending.get(pendingPos).compareTo(indexed) <= 0)) {
+                    String uid = pending.get(pendingPos);
+                    pendingPos += 1;
+                    if (uid.equals(indexed)) {
+                        pos += 1;
+                    }
+                    return uid;
+                }
+                pos += 1;
+                return indexed;
+            }
+        };
+    }
+
+    /** Returns whether the raw UID KEY is in the sorted UIDs of the mapped index BUF. */
+    private static boolean isIndexed(ByteBuffer buf, byte[] key) {
+        int firstByte = key[0] & 0xff;
+        int lo = firstByte == 0 ? 0 : buf.getInt((firstByte - 1) * 4);
+        int hi = buf.getInt(firstByte * 4);
+        int pos = search(buf, HEADER_SIZE, lo, hi, key);
+        if (pos >= hi) {
+            return false;
+        }
+        byte[] entry = new byte[ENTRY_SIZE];
+        buf.get(HEADER_SIZE + pos * ENTRY_SIZE, entry);
+        return compare(entry, key) == 0;
+    }
+
+    /** Returns the position of the first raw UID in [LO, HI) not less than KEY,
+     *  among the sorted raw UIDs starting at OFFSET of BUF. */
+    static int search(ByteBuffer buf, int offset, int lo, int hi, byte[] key) {
+        byte[] entry = new byte[ENTRY_SIZE];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            buf.get(offset + mid * ENTRY_SIZE, entry);
+            if (compare(entry, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Reads the sorted raw UIDs (without the fan-out table) of the index file. */
+    private byte[] readEntries() {
+        byte[] contents = readContents(file);
+        return Arrays.copyOfRange(contents, HEADER_SIZE, contents.length);
+    }
+
+    /** Returns the UIDs of the pending file, in the order they were appended. */
+    private Set<String> readPending() {
+        Set<String> ids = new LinkedHashSet<>();
+        if (!pendingFile.exists()) {
+            return ids;
+        }
+        byte[] contents = readContents(pendingFile);
+        for (int i = 0; i + ENTRY_SIZE <= contents.length; i += ENTRY_SIZE) {
+            ids.add(bytesToHex(Arrays.copyOfRange(contents, i, i + ENTRY_SIZE)));
+        }
+        return ids;
+    }
+
+    /** Writes the fan-out table and the sorted raw UIDs to the index file. */
+    private void write(byte[] entries) {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + entries.length);
+        int[] fanout = new int[FANOUT_SIZE];
+        for (int i = 0; i < entries.length; i += ENTRY_SIZE) {
+            fanout[entries[i] & 0xff] += 1;
+        }
+        int total = 0;
+        for (int count : fanout) {
+            total += count;
+            buf.putInt(total);
+        }
+        buf.put(entries);
+        replaceContents(file, buf.array());
+    }
+
+    /** Compares two raw UIDs as unsigned bytes. */
+    static int compare(byte[] a, byte[] b) {
+        return compare(a, 0, b);
+    }
+
+    /** Compares the raw UID at OFFSET of A with B as unsigned bytes. */
+    private static int compare(byte[] a, int offset, byte[] b) {
+        for (int i = 0; i < ENTRY_SIZE; i += 1) {
+            int diff = (a[offset + i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+}
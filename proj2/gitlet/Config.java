@@ -0,0 +1,54 @@
+package gitlet;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/**
+ * Reads and writes the config file of a gitlet repository, a plain text file of
+ * <code>key = value</code> lines. Blank lines and lines starting with '#' are ignored.
+ * @author Yuhan Zhang
+ */
+public class Config {
+
+    /** Name of the config file in the .gitlet directory. */
+    public static final String FILE_NAME = "config";
+
+    /** Returns the value of the KEY in the config of the repository (.gitlet) at the
+     *  specified directory, or null if it is not set. */
+    public static String get(File gitletDir, String key) {
+        return load(gitletDir).get(key);
+    }
+
+    /** Sets the KEY to VALUE in the config of the repository at the specified directory. */
+    public static void set(File gitletDir, String key, String value) {
+        Map<String, String> entries = load(gitletDir);
+        entries.put(key, value);
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            sb.append(e.getKey()).append(" = ").append(e.getValue()).append("\n");
+        }
+        writeContents(join(gitletDir, FILE_NAME), sb.toString());
+    }
+
+    /** Returns all the entries in the config of the repository at the specified directory. */
+    private static Map<String, String> load(File gitletDir) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        File file = join(gitletDir, FILE_NAME);
+        if (!file.exists()) {
+            return entries;
+        }
+        for (String line : readContentsAsString(file).split("\n")) {
+            line = line.trim();
+            int eq = line.indexOf('=');
+            if (line.isEmpty() || line.startsWith("#") || eq < 0) {
+                continue;
+            }
+            entries.put(line.substring(0, eq).trim(), line.substring(eq + 1).trim());
+        }
+        return entries;
+    }
+
+}
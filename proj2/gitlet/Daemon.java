@@ -0,0 +1,252 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import static gitlet.Utils.*;
+
+/**
+ * Serves the commands of a repository from a long-running process, so that they do not pay
+ * the startup of the JVM, nor the warmup of its compiler, nor the reading of the objects of
+ * the repository over and over. The daemon listens on a loopback socket, whose port it writes
+ * to the daemon file of the repository along with a random token, and runs the commands it
+ * receives one at a time, as if each were run on its own: only the objects, which never
+ * change, are kept cached from one to the next. While the daemon file exists, Main forwards
+ * its command line to the daemon, then writes back what the command printed and exits with
+ * its exit code, falling back to running the command itself if no daemon answers. A loopback
+ * socket is used rather than a Unix-domain one since opening the latter initializes a secure
+ * random generator, which costs the client a third of its startup; the token, readable by
+ * the owner of the repository only, keeps other users of the machine out instead.
+ * A request is the token, the setting of the GITLET_TRACE environment variable of the
+ * client, empty if unset, and the number of args followed by each arg, each string as its
+ * length and its UTF-8 bytes. The response is a sequence of frames, each a kind and a length
+ * followed by as many bytes of the standard output or error, ended by the frame of the exit
+ * code.
+ * @author Yuhan Zhang
+ */
+public class Daemon {
+
+    /** Kind of the frames of the standard output of a command. */
+    private static final byte OUT = 1;
+    /** Kind of the frames of the standard error of a command. */
+    private static final byte ERR = 2;
+    /** Kind of the frame ending a response, holding the exit code of the command. */
+    private static final byte EXIT = 3;
+    /** Size of the buffers of the output of a command, and so of its frames. */
+    private static final int BUFFER_SIZE = 1 << 13;
+    /** Request checking whether a daemon is running. */
+    private static final String[] PING = {"daemon", "ping"};
+    /** Request stopping the daemon. */
+    private static final String[] STOP = {"daemon", "stop"};
+
+    /** Number of random bytes of a token. */
+    private static final int TOKEN_BYTES = 16;
+
+    /** Returns the daemon file of the repository, holding the port and the token of its
+     *  daemon. */
+    private static File getFile() {
+        return join(Repository.GITLET_DIR, "daemon");
+    }
+
+    /** Serves the commands received on a loopback socket until stopped. */
+    public static void serve() {
+        File file = getFile();
+        if (forward(PING) >= 0) {
+            exit("A daemon is already running in this repository.");
+        }
+        byte[] random = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(random);
+        String token = bytesToHex(random);
+        Session.keepObjects();
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        try (ServerSocket server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            // Writes the daemon file readable by the owner only, replacing the file of a
+            // daemon which did not stop cleanly.
+            file.delete();
+            file.createNewFile();
+            file.setReadable(false, false);
+            file.setReadable(true, true);
+            writeContents(file, server.getLocalPort() + " " + token);
+            file.deleteOnExit();
+            boolean running = true;
+            while (running) {
+                try (Socket client = server.accept()) {
+                    client.setTcpNoDelay(true);
+                    running = handle(client, token);
+                } catch (IOException e) {
+                    // The client went away; its command still ran.
+                    continue;
+                } finally {
+                    System.setOut(stdout);
+                    System.setErr(stderr);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /** Runs the command received from the specified client, if it sent the TOKEN, and sends
+     *  back its output and its exit code. Returns whether the daemon should keep serving. */
+    private static boolean handle(Socket client, String token) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(client.getInputStream()));
+        if (!token.equals(readString(in))) {
+            return true;
+        }
+        String trace = readString(in);
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = readString(in);
+        }
+        DataOutputStream response = new DataOutputStream(
+                new BufferedOutputStream(client.getOutputStream()));
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                new FrameOutputStream(response, OUT), BUFFER_SIZE));
+        PrintStream err = new PrintStream(new BufferedOutputStream(
+                new FrameOutputStream(response, ERR), BUFFER_SIZE));
+        int code = 0;
+        if (args.length > 0 && args[0].equals("daemon")) {
+            // Answers the pings and the stop, but never serves a second daemon.
+            if (!Arrays.equals(args, PING) && !Arrays.equals(args, STOP)) {
+                out.println("A daemon is already running in this repository.");
+            }
+        } else {
+            System.setOut(out);
+            System.setErr(err);
+            code = Main.executeAndReport(args, trace);
+        }
+        out.flush();
+        err.flush();
+        synchronized (response) {
+            response.writeByte(EXIT);
+            response.writeInt(code);
+            response.flush();
+        }
+        return !Arrays.equals(args, STOP);
+    }
+
+    /** Stops the daemon of the repository. */
+    public static void stop() {
+        if (forward(STOP) < 0) {
+            exit("No daemon is running in this repository.");
+        }
+    }
+
+    /** Forwards the command of the specified command line args to the daemon of the
+     *  repository, writing what it prints to the standard output and error. Returns its exit
+     *  code, or -1 if no daemon is running. */
+    public static int forward(String[] args) {
+        File file = getFile();
+        if (!file.isFile()) {
+            return -1;
+        }
+        String[] daemon = readContentsAsString(file).split(" ");
+        Socket socket;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(daemon[0]));
+        } catch (IOException | RuntimeException e) {
+            // The daemon did not stop cleanly and left its file behind.
+            return -1;
+        }
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            DataOutputStream request = new DataOutputStream(
+                    new BufferedOutputStream(s.getOutputStream()));
+            writeString(request, daemon[1]);
+            String trace = System.getenv(Trace.ENV);
+            writeString(request, trace == null ? "" : trace);
+            request.writeInt(args.length);
+            for (String arg : args) {
+                writeString(request, arg);
+            }
+            request.flush();
+            DataInputStream response = new DataInputStream(
+                    new BufferedInputStream(s.getInputStream()));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (true) {
+                byte kind = response.readByte();
+                int length = response.readInt();
+                if (kind == EXIT) {
+                    System.out.flush();
+                    System.err.flush();
+                    return length;
+                }
+                PrintStream stream = kind == OUT ? System.out : System.err;
+                while (length > 0) {
+                    int n = response.read(buffer, 0, Math.min(length, buffer.length));
+                    if (n < 0) {
+                        throw error("Daemon closed the connection.");
+                    }
+                    stream.write(buffer, 0, n);
+                    length -= n;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Writes the specified string, its length followed by its UTF-8 bytes. */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Reads a string written by writeString. */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Stream writing the bytes written to it as frames of one kind of a response. */
+    private static class FrameOutputStream extends OutputStream {
+
+        /** Response of the frames, shared by the standard output and error. */
+        private final DataOutputStream response;
+        /** Kind of the frames. */
+        private final byte kind;
+
+        /** Constructor of the stream of the frames of the specified kind to RESPONSE. */
+        FrameOutputStream(DataOutputStream response, byte kind) {
+            this.response = response;
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (response) {
+                response.writeByte(kind);
+                response.writeInt(len);
+                response.write(b, off, len);
+                response.flush();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Encodes and applies binary deltas between two versions of an object. A delta starts with
+ * the lengths of the base and of the target, followed by instructions which either copy a
+ * range of the base or insert literal bytes, all lengths and offsets being varints.
+ * Matches are found by indexing every block of the base by its contents.
+ * @author Yuhan Zhang
+ */
+public class Delta {
+
+    /** Number of bytes of the blocks matched between the base and the target. */
+    private static final int BLOCK_SIZE = 16;
+    /** Instruction inserting the literal bytes following it. */
+    private static final int INSERT = 0;
+    /** Instruction copying a range of the base. */
+    private static final int COPY = 1;
+
+    /** Returns the delta turning BASE into TARGET. */
+    public static byte[] create(byte[] base, byte[] target) {
+        // Indexes the blocks of the base by their contents.
+        Map<ByteBuffer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK_SIZE <= base.length; i += BLOCK_SIZE) {
+            blocks.putIfAbsent(ByteBuffer.wrap(base, i, BLOCK_SIZE).slice(), i);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int insertStart = 0;
+        int i = 0;
+        while (i + BLOCK_SIZE <= target.length) {
+            Integer match = blocks.get(ByteBuffer.wrap(target, i, BLOCK_SIZE).slice());
+            if (match == null) {
+                i += 1;
+                continue;
+            }
+            // Extends the match backwards into the pending literal bytes, and forwards.
+            int start = match;
+            int tStart = i;
+            while (start > 0 && tStart > insertStart && base[start - 1] == target[tStart - 1]) {
+                start -= 1;
+                tStart -= 1;
+            }
+            int end = match + BLOCK_SIZE;
+            int tEnd = i + BLOCK_SIZE;
+            while (end < base.length && tEnd < target.length && base[end] == target[tEnd]) {
+                end += 1;
+                tEnd += 1;
+            }
+            writeInsert(out, target, insertStart, tStart);
+            out.write(COPY);
+            writeVarint(out, start);
+            writeVarint(out, end - start);
+            insertStart = tEnd;
+            i = tEnd;
+        }
+        writeInsert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the target obtained by applying DELTA to BASE. */
+    public static byte[] apply(byte[] base, byte[] delta) {
+        ByteBuffer in = ByteBuffer.wrap(delta);
+        if (readVarint(in) != base.length) {
+            throw Utils.error("Delta does not apply to its base.");
+        }
+        byte[] target = new byte[readVarint(in)];
+        int pos = 0;
+        while (in.hasRemaining()) {
+            int op = in.get();
+            if (op == COPY) {
+                int offset = readVarint(in);
+                int length = readVarint(in);
+                System.arraycopy(base, offset, target, pos, length);
+                pos += length;
+            } else {
+                int length = readVarint(in);
+                in.get(target, pos, length);
+                pos += length;
+            }
+        }
+        return target;
+    }
+
+    /** Writes an instruction inserting the bytes of TARGET in [FROM, TO), if any. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Writes the non-negative VALUE as a varint, 7 bits per byte. */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Reads a varint written by writeVarint. */
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.get();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+}
@@ -4,9 +4,10 @@ import java.io.File;
 
 /** A debugging class whose main program may be invoked as follows:
  *      java gitlet.DumpObj FILE...
- *  where each FILE is a file produced by Utils.writeObject (or any file
- *  containing a serialized object).  This will simply read FILE,
- *  deserialize it, and call the dump method on the resulting Object.
+ *  where each FILE is a file containing an object encoded by ObjectFormat,
+ *  possibly compressed by a Codec.  This will
+ *  simply read FILE, decode it, and call the dump method on the resulting
+ *  Object.  Blobs and chunk lists are printed as their size and chunks.
  *  The object must implement the gitlet.Dumpable interface for this
  *  to work.  For example, you might define your class like this:
  *
@@ -33,9 +34,15 @@ public class DumpObj {
      *  in FILES. */
     public static void main(String... files) {
         for (String fileName : files) {
-            Dumpable obj = Utils.readObject(new File(fileName),
-                                            Dumpable.class);
-            obj.dump();
+            byte[] bytes = Codec.decode(Utils.readContents(new File(fileName)));
+            if (Blob.isStored(bytes)) {
+                byte[] contents = Blob.fromStored(bytes).getContents();
+                System.out.printf("blob of %d bytes%n", contents.length);
+            } else if (Chunker.isList(bytes)) {
+                System.out.printf("chunks %s%n", Chunker.decodeList(bytes));
+            } else {
+                ((Dumpable) ObjectFormat.decode(bytes)).dump();
+            }
             System.out.println("---");
         }
     }
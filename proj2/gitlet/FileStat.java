@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+import static gitlet.Utils.*;
+
+/**
+ * Represents the stat data of a working file recorded in the staging area, along with
+ * the UID of the blob its contents hashed to. As long as the stat data of the file stays
+ * the same, its contents are trusted to be unchanged and the file is not read again.
+ * @author Yuhan Zhang
+ */
+public class FileStat {
+
+    /** Milliseconds within which a modification may not change the recorded timestamp.
+     *  Covers file systems with whole-second timestamps. */
+    private static final long RACY_WINDOW = 1000;
+
+    /** Size of the file in bytes. */
+    private final long size;
+    /** Last modified time of the file in milliseconds. */
+    private final long mtime;
+    /** Key (device and inode where available) identifying the file, or null. */
+    private final String fileKey;
+    /** UID of the blob the contents of the file hashed to. */
+    private final String blobID;
+    /** Time in milliseconds the stat data was recorded. */
+    private final long recorded;
+
+    /** Constructor, reads the stat data of the file whose contents hash to BLOBID. */
+    public FileStat(File file, String blobID) {
+        try {
+            BasicFileAttributes attr = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            this.size = attr.size();
+            this.mtime = attr.lastModifiedTime().toMillis();
+            this.fileKey = attr.fileKey() == null ? null : attr.fileKey().toString();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.blobID = blobID;
+        this.recorded = System.currentTimeMillis();
+    }
+
+    /** Constructor, restores the stat data read from the staging area. */
+    private FileStat(long size, long mtime, String fileKey, String blobID, long recorded) {
+        this.size = size;
+        this.mtime = mtime;
+        this.fileKey = fileKey;
+        this.blobID = blobID;
+        this.recorded = recorded;
+    }
+
+    /** Writes the stat data in the binary format of the staging area: size, modified and
+     *  recorded time, the raw blob UID, then the length-prefixed file key (-1 if none). */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeLong(size);
+        out.writeLong(mtime);
+        out.writeLong(recorded);
+        out.write(hexToBytes(blobID));
+        if (fileKey == null) {
+            out.writeShort(-1);
+        } else {
+            byte[] key = fileKey.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(key.length);
+            out.write(key);
+        }
+    }
+
+    /** Reads the stat data written by write at the current position of BUF. */
+    public static FileStat read(ByteBuffer buf) {
+        long size = buf.getLong();
+        long mtime = buf.getLong();
+        long recorded = buf.getLong();
+        byte[] blobID = new byte[UID_LENGTH / 2];
+        buf.get(blobID);
+        String fileKey = null;
+        short keyLength = buf.getShort();
+        if (keyLength >= 0) {
+            byte[] key = new byte[keyLength];
+            buf.get(key);
+            fileKey = new String(key, StandardCharsets.UTF_8);
+        }
+        return new FileStat(size, mtime, fileKey, bytesToHex(blobID), recorded);
+    }
+
+    /** Returns whether the recorded stat data still describes the file. A racily clean
+     *  entry, i.e. one recorded within the timestamp granularity of the last modification,
+     *  is never trusted since the file may have changed again without changing its stat. */
+    public boolean matches(File file) {
+        if (mtime + RACY_WINDOW >= recorded) {
+            return false;
+        }
+        FileStat current = new FileStat(file, null);
+        return size == current.size && mtime == current.mtime
+                && Objects.equals(fileKey, current.fileKey);
+    }
+
+    /** Returns the UID of the blob the contents of the file hashed to. */
+    public String getBlobID() {
+        return this.blobID;
+    }
+
+}
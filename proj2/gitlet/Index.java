@@ -1,7 +1,13 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
 
 import static gitlet.Utils.*;
@@ -11,25 +17,122 @@ import static gitlet.Repository.*;
  * Represents the staging area of the gitlet repository.
  * @author Yuhan Zhang
  */
-public class Index implements Serializable {
+public class Index {
 
-    /** Map of the files staged. */
-    private final Map<File, Blob> staged;
-    /** Map of the files removed. */
-    private final Map<File, Blob> removed;
+    /** Magic number at the beginning of the index file, "GIDX". */
+    private static final int MAGIC = 0x47494458;
+    /** Version of the binary format of the index file. */
+    private static final int VERSION = 1;
+    /** Entry flag, the file is staged for addition. */
+    private static final int FLAG_STAGED = 1;
+    /** Entry flag, the file is staged for removal. */
+    private static final int FLAG_REMOVED = 2;
+    /** Entry flag, the stat data of the working file is recorded. */
+    private static final int FLAG_STAT = 4;
+
+    /** Map of the file names staged to the UIDs of their blobs. */
+    private final Map<String, String> staged;
+    /** Set of the file names staged for removal. */
+    private final Set<String> removed;
+    /** Map of the file names to the stat data of the working files last hashed or written. */
+    private final Map<String, FileStat> stats;
+    /** Whether the stat data changed since the staging area was read. */
+    private boolean statsChanged;
 
     /** Default constructor, initializes the instance variables. */
     public Index() {
-        staged = new HashMap<File, Blob>();
-        removed = new HashMap<File, Blob>();
+        staged = new HashMap<String, String>();
+        removed = new HashSet<String>();
+        stats = new HashMap<String, FileStat>();
     }
 
-    /** Updates and writes to the staging area. */
+    /** Reads the staging area from the index file. */
+    public static Index load() {
+        MappedByteBuffer buf = mapContents(INDEX);
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            throw error("Unknown format of the staging area.");
+        }
+        Index idx = new Index();
+        int count = buf.getInt();
+        byte[] path = new byte[0];
+        for (int i = 0; i < count; i += 1) {
+            int flags = buf.get();
+            // Restores the path from the prefix shared with the previous one.
+            int shared = buf.getShort() & 0xffff;
+            int suffix = buf.getShort() & 0xffff;
+            path = Arrays.copyOf(path, shared + suffix);
+            buf.get(path, shared, suffix);
+            String fileName = new String(path, StandardCharsets.UTF_8);
+            if ((flags & FLAG_STAGED) != 0) {
+                byte[] blobID = new byte[UID_LENGTH / 2];
+                buf.get(blobID);
+                idx.staged.put(fileName, bytesToHex(blobID));
+            }
+            if ((flags & FLAG_REMOVED) != 0) {
+                idx.removed.add(fileName);
+            }
+            if ((flags & FLAG_STAT) != 0) {
+                idx.stats.put(fileName, FileStat.read(buf));
+            }
+        }
+        return idx;
+    }
+
+    /** Updates and writes to the staging area. The index file holds a header of the magic
+     *  number, the version and the number of entries, followed by the entries sorted by
+     *  file name. Each entry has a byte of flags, the path compressed against the previous
+     *  one (length of the shared prefix, length and bytes of the rest), the raw blob UID if
+     *  staged for addition, and the stat data if recorded. */
     public void save() {
-        writeObject(INDEX, this);
+        Set<String> names = new TreeSet<>();
+        names.addAll(staged.keySet());
+        names.addAll(removed);
+        names.addAll(stats.keySet());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(names.size());
+            byte[] prev = new byte[0];
+            for (String s : names) {
+                byte[] path = s.getBytes(StandardCharsets.UTF_8);
+                int shared = 0;
+                while (shared < prev.length && shared < path.length
+                        && prev[shared] == path[shared]) {
+                    shared += 1;
+                }
+                int flags = (isStaged(s) ? FLAG_STAGED : 0) | (isRemoved(s) ? FLAG_REMOVED : 0)
+                        | (stats.containsKey(s) ? FLAG_STAT : 0);
+                out.writeByte(flags);
+                out.writeShort(shared);
+                out.writeShort(path.length - shared);
+                out.write(path, shared, path.length - shared);
+                if (isStaged(s)) {
+                    out.write(hexToBytes(staged.get(s)));
+                }
+                if (stats.containsKey(s)) {
+                    stats.get(s).write(out);
+                }
+                prev = path;
+            }
+            out.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        replaceContents(INDEX, bytes.toByteArray());
+        Session.get().wrote(INDEX, this);
+        statsChanged = false;
     }
 
-    /** Clears the staging area. */
+    /** Writes to the staging area if any stat data was recorded since it was read. */
+    public void saveStats() {
+        if (statsChanged) {
+            save();
+        }
+    }
+
+    /** Clears the staging area, the stat data of the working files is kept. */
     public void clear() {
         staged.clear();
         removed.clear();
@@ -38,117 +141,205 @@ public class Index implements Serializable {
 
     /** Adds the specified file into staged area. */
     public void add(String fileName, File file) {
-        if (isModified(file)) {
-            Blob b = new Blob(fileName, file);
-            staged.put(file, b);
+        String blobID = hashFile(fileName);
+        if (blobID.equals(getCurrentCommit().getBlobID(fileName))) {
+            staged.remove(fileName);
         } else {
-            staged.remove(file);
+            ObjectStore store = ObjectStore.local();
+            if (!store.contains(blobID)) {
+                try (InputStream in = Files.newInputStream(file.toPath())) {
+                    Trace.read(file, file.length());
+                    store.writeBlob(blobID, in, file.length());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            staged.put(fileName, blobID);
         }
-        removed.remove(file);
+        removed.remove(fileName);
         save();
     }
 
     /** Un-stages the file and removes it if eligible. */
     public void remove(String fileName, File file) {
-        boolean tracked = getCurrentCommit().isTracked(file);
-        if (!isStaged(file) && !tracked) {
+        boolean tracked = getCurrentCommit().isTracked(fileName);
+        if (!isStaged(fileName) && !tracked) {
             exit("No reason to remove the file.");
         }
-        staged.remove(file);
+        staged.remove(fileName);
         if (tracked) {
-            removed.put(file, new Blob(fileName, file));
-            if (file.exists()) {
-                file.delete();
-            }
+            removed.add(fileName);
+            Worktree.local().delete(fileName);
+            stats.remove(fileName);
         }
         save();
     }
 
-    /** Clears the staging area and stages all files in the merged map. */
-    public void merge(Map<File, Blob> merged) {
-        // Checks if any untracked file(s) would be overwritten.
-        for (String s : getUntracked()) {
-            if (merged.containsKey(join(CWD, s))) {
-                exit("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
+    /** Clears the staging area and stages the CHANGES of a merge, mapping the paths of the
+     *  files which differ from the current commit to their merged blobs (null if removed). */
+    public void merge(Map<String, String> changes) {
+        checkUntracked(getCurrentCommit(), changes);
+        clear();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            if (e.getValue() == null) {
+                removed.add(e.getKey());
+            } else {
+                staged.put(e.getKey(), e.getValue());
             }
         }
-        // Deletes all the files (not the blobs) currently tracked.
-        for (Blob b : getCurrentCommit().getBlobs().values()) {
-            b.delete();
-        }
-        clear();
-        staged.putAll(merged);
         save();
     }
 
     /** Checks whether the specified file is modified under that in the last commit. */
-    public boolean isModified(File file) {
-        Blob b;
-        if (isStaged(file)) {
-            b = staged.get(file);
+    public boolean isModified(String fileName) {
+        String blobID;
+        if (isStaged(fileName)) {
+            blobID = staged.get(fileName);
         } else {
-            b = getCurrentCommit().getBlob(file);
+            blobID = getCurrentCommit().getBlobID(fileName);
         }
-        if (b == null) {
+        if (blobID == null) {
             return true;
         }
-        byte[] oldFile = b.getContents();
-        byte[] newFile = readContents(file);
-        return !Arrays.equals(oldFile, newFile);
+        return !blobID.equals(hashFile(fileName));
     }
 
-    /** Checks if there is any untracked file(s) that would be overwritten. */
-    public void checkUntracked(Commit commit) {
-        for (String s : getUntracked()) {
-            if (commit.isTracked(join(CWD, s))) {
+    /** Returns the UID of the blob the working file hashes to. Trusts the recorded stat
+     *  data if it still matches the file, otherwise hashes the file and records it. */
+    public String hashFile(String fileName) {
+        File file = join(CWD, fileName);
+        FileStat stat = stats.get(fileName);
+        if (stat != null && stat.matches(file)) {
+            return stat.getBlobID();
+        }
+        String blobID = sha1(file);
+        record(fileName, blobID);
+        return blobID;
+    }
+
+    /** Records the stat data of the working file whose contents hash to BLOBID. */
+    public void record(String fileName, String blobID) {
+        stats.put(fileName, new FileStat(join(CWD, fileName), blobID));
+        statsChanged = true;
+    }
+
+    /** Updates the working files from the commit FROM to the commit TO, and clears the
+     *  staging area. Only the files which differ are written or deleted, found by comparing
+     *  the trees of the commits and skipping the subtrees they share, so that a file tracked
+     *  with the same blob by both commits is left alone. */
+    public void checkout(Commit from, Commit to) {
+        checkout(from, to, false);
+    }
+
+    /** Updates the working files from the commit FROM to the commit TO like checkout, but
+     *  also restores the files tracked with the same blob by both commits whose working
+     *  version is missing or was modified, which is told from their stat data without
+     *  reading them. */
+    public void reset(Commit from, Commit to) {
+        checkout(from, to, true);
+    }
+
+    /** Updates the working files from the commit FROM to the commit TO, restoring the files
+     *  they share which are missing or modified if RESTORE, and clears the staging area. */
+    private void checkout(Commit from, Commit to, boolean restore) {
+        Map<String, String> changes = new TreeMap<>();
+        Tree.diff(ObjectStore.local(), from.getTree(), to.getTree(), "", changes);
+        checkUntracked(from, changes);
+        Worktree worktree = Worktree.local();
+        // Deletes the files which are not tracked anymore.
+        Map<String, String> changed = new TreeMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            if (e.getValue() == null) {
+                worktree.delete(e.getKey());
+                stats.remove(e.getKey());
+                statsChanged = true;
+            } else {
+                changed.put(e.getKey(), e.getValue());
+            }
+        }
+        // Restores the files left alone which are missing or modified in the working directory.
+        if (restore) {
+            for (Map.Entry<String, String> e : to.getBlobs().entrySet()) {
+                String name = e.getKey();
+                if (!changes.containsKey(name) && (!join(CWD, name).isFile()
+                        || !e.getValue().equals(hashFile(name)))) {
+                    changed.put(name, e.getValue());
+                }
+            }
+        }
+        worktree.write(changed);
+        for (Map.Entry<String, String> e : changed.entrySet()) {
+            record(e.getKey(), e.getValue());
+        }
+        clear();
+    }
+
+    /** Checks if there is any untracked file(s) that would be overwritten by the CHANGES,
+     *  being neither tracked by the CURRENT commit nor staged. */
+    private void checkUntracked(Commit current, Map<String, String> changes) {
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String s = e.getKey();
+            if (e.getValue() != null && !isStaged(s) && join(CWD, s).isFile()
+                    && !current.isTracked(s)) {
                 exit("There is an untracked file in the way; "
                         + "delete it, or add and commit it first.");
             }
         }
     }
 
+    /** Returns the changes of the staging area, mapping the paths of the files staged to the
+     *  UIDs of their blobs, or to null if staged for removal. */
+    public Map<String, String> getChanges() {
+        Map<String, String> changes = new TreeMap<>(staged);
+        for (String s : removed) {
+            changes.put(s, null);
+        }
+        return changes;
+    }
+
     /** Returns whether the staging area is cleared. */
     public boolean isClear() {
         return staged.isEmpty() && removed.isEmpty();
     }
 
     /** Returns whether the specified file is staged for addition. */
-    public boolean isStaged(File file) {
-        return staged.containsKey(file);
+    public boolean isStaged(String fileName) {
+        return staged.containsKey(fileName);
     }
 
     /** Returns whether the specified file is staged for removal. */
-    public boolean isRemoved(File file) {
-        return removed.containsKey(file);
+    public boolean isRemoved(String fileName) {
+        return removed.contains(fileName);
     }
 
-    /** Returns the map of the staged blobs. */
-    public Map<File, Blob> getStaged() {
+    /** Returns the map of the staged file names to blob UIDs. */
+    public Map<String, String> getStaged() {
         return this.staged;
     }
 
-    /** Returns the map of the removed blobs. */
-    public Map<File, Blob> getRemoved() {
+    /** Returns the set of the removed file names. */
+    public Set<String> getRemoved() {
         return this.removed;
     }
 
     /** Returns the array of the modified filenames. */
     public String[] getModified() {
         Set<String> modifiedSet = new HashSet<String>();
-        Map<File, Blob> tracked = getCurrentCommit().getBlobs();
-        for (File f : tracked.keySet()) {
-            if (!f.exists() && !isRemoved(f)) {
-                modifiedSet.add(tracked.get(f).getName() + " (deleted)");
-            } else if (f.exists() && !isStaged(f) && isModified(f)) {
-                modifiedSet.add(tracked.get(f).getName() + " (modified)");
+        Map<String, String> tracked = getCurrentCommit().getBlobs();
+        for (String s : tracked.keySet()) {
+            File f = join(CWD, s);
+            if (!f.exists() && !isRemoved(s)) {
+                modifiedSet.add(s + " (deleted)");
+            } else if (f.exists() && !isStaged(s) && isModified(s)) {
+                modifiedSet.add(s + " (modified)");
             }
         }
-        for (File f : staged.keySet()) {
+        for (String s : staged.keySet()) {
+            File f = join(CWD, s);
             if (!f.exists()) {
-                modifiedSet.add(staged.get(f).getName() + " (deleted)");
-            } else if (f.exists() && isModified(f)) {
-                modifiedSet.add(staged.get(f).getName() + " (modified)");
+                modifiedSet.add(s + " (deleted)");
+            } else if (f.exists() && isModified(s)) {
+                modifiedSet.add(s + " (modified)");
             }
         }
         String[] modifiedArray = new String[modifiedSet.size()];
@@ -160,12 +351,11 @@ public class Index implements Serializable {
     /** Returns the array of the untracked filenames. */
     public String[] getUntracked() {
         Set<String> untrackedSet = new TreeSet<>();
-        Map<File, Blob> tracked = getCurrentCommit().getBlobs();
-        List<String> cwdFiles = plainFilenamesIn(CWD);
+        Map<String, String> tracked = getCurrentCommit().getBlobs();
+        List<String> cwdFiles = Worktree.local().listFiles();
         if (cwdFiles != null) {
             for (String s : cwdFiles) {
-                File f = join(CWD, s);
-                if (!isStaged(f) && !tracked.containsKey(f)) {
+                if (!isStaged(s) && !tracked.containsKey(s)) {
                     untrackedSet.add(s);
                 }
             }
@@ -176,14 +366,10 @@ public class Index implements Serializable {
         return untrackedArray;
     }
 
-    /** Converts the map of the files into arrays in lexicographic order. */
-    public String[] sort(Map<File, Blob> map) {
-        String[] str = new String[map.size()];
-        int idx = 0;
-        for (Blob b : map.values()) {
-            str[idx] = b.getName();
-            idx += 1;
-        }
+    /** Converts the collection of the file names into arrays in lexicographic order. */
+    public String[] sort(Collection<String> names) {
+        String[] str = new String[names.size()];
+        names.toArray(str);
         Arrays.sort(str);
         return str;
     }
@@ -195,18 +381,15 @@ public class Index implements Serializable {
 
         status.append("=== Branches ===\n");
         String current = getCurrentBranch().getName();
-        List<String> branches = plainFilenamesIn(join(REFS_DIR, "heads"));
-        if (branches != null) {
-            for (String s : branches) {
-                if (s.equals(current)) {
-                    status.append("*");
-                }
-                status.append(s).append("\n");
+        for (Branch b : Branch.findAll()) {
+            if (b.getName().equals(current)) {
+                status.append("*");
             }
+            status.append(b.getName()).append("\n");
         }
 
         status.append("\n=== Staged Files ===\n");
-        for (String s : sort(staged)) {
+        for (String s : sort(staged.keySet())) {
             status.append(s).append("\n");
         }
 
@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Represents a cache of bounded size evicting the least recently used entries first. Each
+ * entry has a weight, such as the size of the object it holds, and the total weight of the
+ * entries never exceeds the capacity. The cache counts its hits and misses.
+ * @author Yuhan Zhang
+ */
+public class LruCache<K, V> {
+
+    /** An entry of the cache, a value with its weight. */
+    private static class Entry<V> {
+        /** Value of this entry. */
+        private final V value;
+        /** Weight of this entry. */
+        private final long weight;
+
+        /** Constructor of an entry of the specified value and weight. */
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /** Name of this cache, as shown in its statistics. */
+    private final String name;
+    /** Maximum total weight of the entries. */
+    private final long capacity;
+    /** Entries of this cache, from the least to the most recently used. */
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** Total weight of the entries. */
+    private long weight;
+    /** Number of lookups which found their entry. */
+    private long hits;
+    /** Number of lookups which did not find their entry. */
+    private long misses;
+
+    /** Constructor of an empty cache of the specified name and capacity. */
+    public LruCache(String name, long capacity) {
+        this.name = name;
+        this.capacity = capacity;
+    }
+
+    /** Returns the value of the specified key, or null if it is not cached. */
+    public V get(K key) {
+        Entry<V> e = entries.get(key);
+        if (e == null) {
+            misses += 1;
+            return null;
+        }
+        hits += 1;
+        return e.value;
+    }
+
+    /** Caches the value of the specified key with a weight of 1. */
+    public void put(K key, V value) {
+        put(key, value, 1);
+    }
+
+    /** Caches the value of the specified key with the specified weight, evicting the least
+     *  recently used entries to make room for it. Values heavier than the whole capacity are
+     *  not cached. */
+    public void put(K key, V value, long valueWeight) {
+        remove(key);
+        if (valueWeight > capacity) {
+            return;
+        }
+        entries.put(key, new Entry<>(value, valueWeight));
+        weight += valueWeight;
+        Iterator<Entry<V>> eldest = entries.values().iterator();
+        while (weight > capacity) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+        }
+    }
+
+    /** Removes the value of the specified key, if cached. */
+    public void remove(K key) {
+        Entry<V> e = entries.remove(key);
+        if (e != null) {
+            weight -= e.weight;
+        }
+    }
+
+    /** Returns the number of lookups of the cache. */
+    public long getLookups() {
+        return hits + misses;
+    }
+
+    /** Returns the statistics of the cache: its hits, misses and hit rate. */
+    @Override
+    public String toString() {
+        double rate = getLookups() == 0 ? 0 : 100.0 * hits / getLookups();
+        return String.format("%s %d hits / %d misses (%.1f%%)", name, hits, misses, rate);
+    }
+
+}
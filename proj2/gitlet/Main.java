@@ -1,5 +1,11 @@
 package gitlet;
 
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
 import static gitlet.Utils.*;
 
 /**
@@ -42,9 +48,10 @@ public class Main {
      *      backwards along the commit tree until the initial commit, following the first parent
      *      commit links, ignoring any second parents found in merge commits.
      *
-     *  global-log --
-     *      Like log, except displays information about all commits ever made. The order of the
-     *      commits does not matter.
+     *  global-log [--limit <n>] [--since <yyyy-MM-dd>] --
+     *      Like log, except displays information about all commits ever made, from the newest
+     *      to the oldest. Stops after n commits if a limit is given, and at the first commit
+     *      made before the given date.
      *
      *  find <commit message> --
      *      Prints out the ids of all commits that have the given commit message, one per line.
@@ -86,6 +93,11 @@ public class Main {
      *  merge <branch name> --
      *      Merges files from the given branch into the current branch.
      *
+     *  repack --
+     *      Consolidates all loose objects of the repository into a single pack file along
+     *      with an index of the offset of each object, and deletes the loose objects. Also
+     *      moves all the branch references into the sorted packed-refs file.
+     *
      *  add-remote <remote name> <name of the directory>/.gitlet
      *       Saves the given login information under the given remote name. Attempts to push or
      *       pull from the given remote name will then attempt to use this .gitlet directory.
@@ -111,11 +123,79 @@ public class Main {
      *      Fetches branch [remote name]/[remote branch name] as for the fetch command, and then
      *      merges that fetch into the current branch.
      *
+     *  --batch [script file] --
+     *      Runs the commands of the script file, or of the standard input, one per line in a
+     *      single process, as if each were run on its own. A command exiting with a message or
+     *      failing with an error does not end the batch.
+     *
+     *  --trace[=text|json] <command> <operands> --
+     *      Runs the command, then reports to the standard error the time spent in each of its
+     *      phases, the files it read, mapped and wrote with their bytes, the directories it
+     *      listed and the objects it parsed by type, as text or as a line of JSON. Setting the
+     *      GITLET_TRACE environment variable to text or json traces every command.
+     *
+     *  daemon [stop] --
+     *      Serves the commands of the repository from a long-running process, keeping the JVM
+     *      warm and the objects cached between commands, until stopped by daemon stop. While
+     *      it runs, every other command is forwarded to it, with the same output.
+     *
      */
     public static void main(String[] args) {
-        if (args.length == 0) {
-            exit("Please enter a command.");
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.exit(Batch.run(args));
+        }
+        // Forwards the command to the daemon of the repository, if one is running.
+        if (args.length > 0 && !args[0].equals("daemon")) {
+            int code = Daemon.forward(args);
+            if (code >= 0) {
+                System.exit(code);
+            }
+        }
+        execute(args, System.getenv(Trace.ENV));
+    }
+
+    /** Runs the command of the specified command line args in its own session, until it
+     *  completes or exits. The args may start with a --trace option tracing the command,
+     *  which is otherwise traced as asked by TRACE, the setting of the GITLET_TRACE
+     *  environment variable where the command was run. */
+    static void execute(String[] args, String trace) {
+        Session session = null;
+        try {
+            String option = null;
+            if (args.length > 0 && args[0].startsWith("--trace")) {
+                option = args[0];
+                args = Arrays.copyOfRange(args, 1, args.length);
+            }
+            if (args.length == 0) {
+                exit("Please enter a command.");
+            }
+            session = Session.begin(args[0], Trace.start(args[0], option, trace));
+            run(args);
+        } catch (ExitException e) {
+            // The command printed its message and ended.
+        } finally {
+            if (session != null) {
+                session.end();
+            }
         }
+    }
+
+    /** Runs the command of the specified command line args like execute, but prints an
+     *  uncaught error as the JVM does instead of throwing it. Returns the exit code of the
+     *  command. */
+    static int executeAndReport(String[] args, String trace) {
+        try {
+            execute(args, trace);
+            return 0;
+        } catch (Throwable t) {
+            System.err.print("Exception in thread \"main\" ");
+            t.printStackTrace();
+            return 1;
+        }
+    }
+
+    /** Runs the command of the specified command line args. */
+    private static void run(String[] args) {
         switch (args[0]) {
             case "init":
                 Repository.initialize();
@@ -138,8 +218,7 @@ public class Main {
                 Repository.log();
                 break;
             case "global-log":
-                validate(args, 1);
-                Repository.globalLog();
+                globalLog(args);
                 break;
             case "find":
                 validate(args, 2);
@@ -168,6 +247,10 @@ public class Main {
                 validate(args, 2);
                 Repository.merge(args[1]);
                 break;
+            case "repack":
+                validate(args, 1);
+                Repository.repack();
+                break;
             case "add-remote":
                 validate(args, 3);
                 Remote.addRemote(args[1], args[2]);
@@ -188,6 +271,9 @@ public class Main {
                 validate(args, 3);
                 Remote.pull(args[1], args[2]);
                 break;
+            case "daemon":
+                daemon(args);
+                break;
             default:
                 exit("No command with that name exists.");
         }
@@ -205,6 +291,47 @@ public class Main {
         }
     }
 
+    /** Checker for the daemon command. */
+    private static void daemon(String[] args) {
+        validate(args, args.length);
+        if (args.length == 1) {
+            Daemon.serve();
+        } else if (args.length == 2 && args[1].equals("stop")) {
+            Daemon.stop();
+        } else {
+            exit("Incorrect operands.");
+        }
+    }
+
+    /** Checker for the global-log command. */
+    private static void globalLog(String[] args) {
+        validate(args, args.length);
+        int limit = -1;
+        Date since = null;
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    exit("Incorrect operands.");
+                }
+                if (args[i].equals("--limit")) {
+                    limit = Integer.parseInt(args[i + 1]);
+                    if (limit < 0) {
+                        exit("Incorrect operands.");
+                    }
+                } else if (args[i].equals("--since")) {
+                    SimpleDateFormat d = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
+                    d.setLenient(false);
+                    since = d.parse(args[i + 1]);
+                } else {
+                    exit("Incorrect operands.");
+                }
+            }
+        } catch (NumberFormatException | ParseException e) {
+            exit("Incorrect operands.");
+        }
+        Repository.globalLog(limit, since);
+    }
+
     /** Checker for the checkout command. */
     private static void checkout(String[] args) {
         if (args.length == 2) {
@@ -1,7 +1,6 @@
 package gitlet;
 
 import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -20,111 +19,95 @@ public class Merge {
         // Finds and checks the split commit.
         Commit currentCommit = current.getCommit();
         Commit otherCommit = other.getCommit();
+        Trace.phase("split point");
         Commit splitCommit = findSplitPoint(currentCommit, otherCommit);
         if (splitCommit.getUID().equals(otherCommit.getUID())) {
             exit("Given branch is an ancestor of the current branch.");
         }
         if (splitCommit.getUID().equals(currentCommit.getUID())) {
+            Trace.phase("checkout");
             checkoutBranch(other.getName());
             exit("Current branch fast-forwarded.");
         }
 
-        // Required maps for the merge operation.
-        Map<File, Blob> currentFiles = currentCommit.getBlobs();
-        Map<File, Blob> otherFiles = otherCommit.getBlobs();
-        Map<File, Blob> splitFiles = splitCommit.getBlobs();
-        Map<File, Blob> mergedFiles = mergeFiles(currentFiles, otherFiles, splitFiles);
+        // Merges the trees of the commits into the changes to the current commit.
+        Trace.phase("merge trees");
+        Map<String, String> changes = new TreeMap<>();
+        boolean conflict = mergeTrees(ObjectStore.local(), "", splitCommit.getTree(),
+                currentCommit.getTree(), otherCommit.getTree(), changes);
+        // Prints conflict message if conflict occurs.
+        if (conflict) {
+            System.out.println("Encountered a merge conflict.");
+        }
 
-        // Updates the staging area, commits the merge, and updates all files.
-        getIndex().merge(mergedFiles);
+        // Updates the staging area, commits the merge, and updates the files which changed.
+        Trace.phase("commit");
+        getIndex().merge(changes);
         Commit mergeCommit = new Commit(current, other);
         mergeCommit.commit();
-        reset(mergeCommit.getUID());
+        Trace.phase("checkout");
+        getIndex().checkout(currentCommit, mergeCommit);
     }
 
-    /** Merges the files in two branches. */
-    private static Map<File, Blob> mergeFiles(Map<File, Blob> current,
-                                              Map<File, Blob> other,
-                                              Map<File, Blob> split) {
-        // All files map.
-        Map<File, Blob> all = new HashMap<>();
-        all.putAll(current);
-        all.putAll(other);
-        // Merged files map.
-        Map<File, Blob> merged = new HashMap<>();
-        // Checked files set.
-        Set<File> checked = new HashSet<>();
-        // Merge conflict flag.
-        boolean flag = false;
-
-        for (Blob b : all.values()) {
-            // Records and checks file consistency.
-            File f = b.getPath();
-            if (checked.contains(f)) {
+    /** Merges the trees of the UIDs SPLIT, CURRENT and OTHER (null if absent) under PREFIX,
+     *  putting into CHANGES the paths of the files whose merged blob differs from the current
+     *  one mapped to the merged blob (null if removed). Returns whether a conflict occurred.
+     *  The same rules apply to trees as to files, so that a subtree changed on one side only
+     *  is taken as a whole, and only the subtrees changed on both sides are walked. */
+    private static boolean mergeTrees(ObjectStore store, String prefix, String split,
+                                      String current, String other,
+                                      Map<String, String> changes) {
+        // Unmodified in other, or modified in current and other the same way.
+        if (Objects.equals(split, other) || Objects.equals(current, other)) {
+            return false;
+        }
+        // Modified in other, but not current.
+        if (Objects.equals(split, current)) {
+            Tree.diff(store, current, other, prefix, changes);
+            return false;
+        }
+        // Modified in both, merges the entries one by one.
+        Map<String, String> splitEntries = getEntries(store, split);
+        Map<String, String> currentEntries = getEntries(store, current);
+        Map<String, String> otherEntries = getEntries(store, other);
+        Set<String> all = new TreeSet<>(splitEntries.keySet());
+        all.addAll(currentEntries.keySet());
+        all.addAll(otherEntries.keySet());
+        boolean conflict = false;
+        for (String name : all) {
+            String splitID = splitEntries.get(name);
+            String currentID = currentEntries.get(name);
+            String otherID = otherEntries.get(name);
+            if (Tree.isDirectory(name)) {
+                conflict |= mergeTrees(store, prefix + name, splitID, currentID, otherID,
+                        changes);
+            } else if (Objects.equals(splitID, otherID) || Objects.equals(currentID, otherID)) {
+                // Keeps the current blob, or its absence.
                 continue;
+            } else if (Objects.equals(splitID, currentID)) {
+                // Takes the other blob, or removes the file.
+                changes.put(prefix + name, otherID);
+            } else {
+                // Remaining blob encounters merge conflict.
+                conflict = true;
+                changes.put(prefix + name, mergeConflict(currentID, otherID));
             }
-            checked.add(f);
-
-            // Blob that is not present in the split commit.
-            if (!b.isIn(split)) {
-                // Puts the blob in merged
-                // except that it is modified in both current and other in different ways.
-                if (!(b.isIn(current) && b.isIn(other) && b.isModifiedIn(current, other))) {
-                    merged.put(f, b);
-                    continue;
-                }
-            }
-
-            // Blob that is in the split commit.
-            if (b.isIn(split)) {
-                // Skips the blob: Unmodified in current but not present in other.
-                if (b.isIn(current) && !b.isIn(other) && !b.isModifiedIn(split, current)) {
-                    continue;
-                }
-                // Skips the blob: Unmodified in other but not present in current.
-                if (!b.isIn(current) && b.isIn(other) && !b.isModifiedIn(split, other)) {
-                    continue;
-                }
-                // Blob is in split, current, and other.
-                if (b.isIn(current) && b.isIn(other)) {
-                    // Modified in current and other the same way.
-                    if (!b.isModifiedIn(current, other)) {
-                        merged.put(f, b);
-                        continue;
-                    }
-                    // Modified in other, but not current.
-                    if (!b.isModifiedIn(split, current)) {
-                        merged.put(f, other.get(b.getPath()));
-                        continue;
-                    }
-                    // Modified in current, but not other.
-                    if (!b.isModifiedIn(split, other)) {
-                        merged.put(f, current.get(b.getPath()));
-                        continue;
-                    }
-                }
-            }
-
-            // Remaining blob encounters merge conflict.
-            flag = true;
-            merged.put(f, mergeConflict(b, current, other));
-        }
-
-        // Prints conflict message if conflict occurs.
-        if (flag) {
-            System.out.println("Encountered a merge conflict.");
         }
+        return conflict;
+    }
 
-        return merged;
+    /** Returns the entries of the tree of the specified UID, or none if it is null. */
+    private static Map<String, String> getEntries(ObjectStore store, String uid) {
+        return uid == null ? Collections.emptyMap() : Tree.read(store, uid).getEntries();
     }
 
-    /** Handles the merge conflict and returns the merged blob. */
-    private static Blob mergeConflict(Blob blob, Map<File, Blob> current, Map<File, Blob> other) {
+    /** Handles the merge conflict, saves the merged blob and returns its UID. */
+    private static String mergeConflict(String currentID, String otherID) {
         // Gets the blob contents (empty byte array if null).
-        Blob currentBlob = current.get(blob.getPath());
-        Blob otherBlob = other.get(blob.getPath());
-        byte[] currentContents = currentBlob == null ? new byte[0] : currentBlob.getContents();
-        byte[] otherContents = otherBlob == null ? new byte[0] : otherBlob.getContents();
+        byte[] currentContents = currentID == null
+                ? new byte[0] : Blob.find(currentID).getContents();
+        byte[] otherContents = otherID == null
+                ? new byte[0] : Blob.find(otherID).getContents();
 
         // Formats the conflict.
         byte[] head = "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
@@ -140,41 +123,19 @@ public class Merge {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        byte[] mergeContents = str.toByteArray();
 
-        // Returns the merged blob.
-        return new Blob(blob.getName(), blob.getPath(), mergeContents);
+        // Saves and returns the merged blob.
+        Blob merged = new Blob(str.toByteArray());
+        merged.save();
+        return merged.getUID();
     }
 
-    /** Returns the split commit which is the latest common ancestor of two specified commits. */
+    /** Returns the split commit which is the latest common ancestor of two specified commits,
+     *  found by walking the commit-graph. */
     private static Commit findSplitPoint(Commit current, Commit other) {
-        // Gets the commit map for both branches.
-        Map<String, Integer> currentMap = new HashMap<>();
-        traceBackCommit(current, currentMap, 0);
-        Map<String, Integer> otherMap = new HashMap<>();
-        traceBackCommit(other, otherMap, 0);
-
-        // Finds the latest common ancestor.
-        String minCommitID = null;
-        int minDepth = currentMap.size();
-        for (String commitID : currentMap.keySet()) {
-            int depth = currentMap.get(commitID);
-            if (otherMap.containsKey(commitID) && depth < minDepth) {
-                minCommitID = commitID;
-                minDepth = depth;
-            }
-        }
-        return Commit.find(minCommitID);
-    }
-
-    /** Recursively adds commitIDs into the commit map with its depth. */
-    private static void traceBackCommit(Commit commit, Map<String, Integer> map, int depth) {
-        if (commit == null) {
-            return;
-        }
-        map.put(commit.getUID(), depth);
-        traceBackCommit(commit.getParent(), map, depth + 1);
-        traceBackCommit(commit.getMergeParent(), map, depth + 1);
+        String splitID = new CommitGraph(ObjectStore.local())
+                .findMergeBase(current.getUID(), other.getUID());
+        return Commit.read(splitID);
     }
 
 }
@@ -0,0 +1,92 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static gitlet.Utils.*;
+
+/**
+ * Represents the inverted index from commit messages to commit UIDs of a repository.
+ * Records are appended to one of 256 bucket files chosen by the first two digits of the
+ * SHA-1 hash of the message, each record being a line of the message hash and the commit
+ * UID. Looking up a message therefore only reads a single small bucket.
+ * @author Yuhan Zhang
+ */
+public class MessageIndex {
+
+    /** Store holding the commits indexed. */
+    private final ObjectStore store;
+    /** Absolute path to the directory holding the bucket files. */
+    private final File directory;
+
+    /** Constructor of the message index of the specified store. */
+    public MessageIndex(ObjectStore store) {
+        this.store = store;
+        this.directory = join(store.getDirectory(), "message-index");
+    }
+
+    /** Appends the message of the specified commit into the index. */
+    public void add(Commit commit) {
+        if (!directory.exists()) {
+            rebuild();
+            return;
+        }
+        append(commit);
+    }
+
+    /** Regenerates the index from all commits in the store, reading only the objects whose
+     *  type is a commit. */
+    public void rebuild() {
+        List<String> buckets = plainFilenamesIn(directory);
+        if (buckets != null) {
+            for (String s : buckets) {
+                join(directory, s).delete();
+            }
+        }
+        directory.mkdir();
+        for (String uid : store.list()) {
+            if (store.typeOf(uid) == ObjectFormat.COMMIT) {
+                append(store.read(uid, Commit.class));
+            }
+        }
+    }
+
+    /** Returns the UIDs of all commits with the specified message. */
+    public Set<String> find(String message) {
+        if (!directory.exists()) {
+            rebuild();
+        }
+        Set<String> ids = new TreeSet<>();
+        String hash = sha1(message);
+        File bucket = join(directory, hash.substring(0, 2));
+        if (!bucket.exists()) {
+            return ids;
+        }
+        for (String record : readContentsAsString(bucket).split("\n")) {
+            if (record.startsWith(hash)) {
+                ids.add(record.substring(UID_LENGTH + 1));
+            }
+        }
+        return ids;
+    }
+
+    /** Appends a record of the specified commit to its bucket file. */
+    private void append(Commit commit) {
+        String hash = sha1(commit.getMessage());
+        String record = hash + " " + commit.getUID() + "\n";
+        File bucket = join(directory, hash.substring(0, 2));
+        byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+        try {
+            Files.write(bucket.toPath(), bytes,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            Trace.wrote(bucket, bytes.length);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static gitlet.Utils.*;
+
+/**
+ * Encodes and decodes the objects of a repository (commits, trees and remotes) in a
+ * compact binary format instead of Java serialization. Encoded bytes start with a type tag
+ * and the version of the encoding of that type, followed by the fields of the object: UIDs
+ * as their 20 raw bytes, numbers and lengths as varints (7 bits per byte, the high bit set
+ * on every byte but the last), and strings as their length followed by their UTF-8 bytes.
+ * @author Yuhan Zhang
+ */
+public class ObjectFormat {
+
+    /** Type tag of commits. */
+    static final byte COMMIT = 1;
+    /** Type tag of trees. */
+    static final byte TREE = 2;
+    /** Type tag of remotes. */
+    static final byte REMOTE = 4;
+    /** Type of blobs, which have their own stored format, see Blob. */
+    static final byte BLOB = 5;
+    /** Type of the chunk lists of chunked blobs, which have their own stored format, see
+     *  Chunker. */
+    static final byte CHUNKS = 6;
+    /** Number of leading stored bytes of an object telling its type. */
+    static final int TYPE_BYTES = 4;
+    /** Version of the encoding of every type. */
+    static final byte VERSION = 1;
+    /** Number of bytes of a raw UID. */
+    private static final int UID_BYTES = UID_LENGTH / 2;
+
+    /** Returns the encoded bytes of the specified object. */
+    public static byte[] encode(Serializable obj) {
+        Output out = new Output();
+        if (obj instanceof Commit) {
+            out.writeHeader(COMMIT);
+            ((Commit) obj).encode(out);
+        } else if (obj instanceof Tree) {
+            out.writeHeader(TREE);
+            ((Tree) obj).encode(out);
+        } else if (obj instanceof Remote) {
+            out.writeHeader(REMOTE);
+            ((Remote) obj).encode(out);
+        } else {
+            throw error("No encoding of %s.", obj.getClass().getName());
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the type of the object whose stored bytes start with the specified PREFIX,
+     *  of which TYPE_BYTES are enough: BLOB or CHUNKS, or the type tag of an object encoded
+     *  in this format. */
+    public static byte typeOf(byte[] prefix) {
+        if (Blob.isStored(prefix)) {
+            return BLOB;
+        } else if (Chunker.isList(prefix)) {
+            return CHUNKS;
+        }
+        return prefix.length > 0 ? prefix[0] : 0;
+    }
+
+    /** Returns the object of the specified encoded BYTES. */
+    public static Serializable decode(byte[] bytes) {
+        Serializable obj = decodeObject(bytes);
+        Trace.parsed(Trace.typeOf(obj));
+        return obj;
+    }
+
+    /** Returns the object of the specified encoded BYTES, untraced. */
+    private static Serializable decodeObject(byte[] bytes) {
+        Input in = new Input(bytes);
+        byte type = in.buf.get();
+        byte version = in.buf.get();
+        if (version != VERSION) {
+            throw error("Unknown version %d of object type %d.", version, type);
+        }
+        switch (type) {
+            case COMMIT:
+                return Commit.decode(in);
+            case TREE:
+                return Tree.decode(in);
+            case REMOTE:
+                return Remote.decode(in);
+            default:
+                throw error("Unknown object type %d.", type);
+        }
+    }
+
+    /** The bytes of an object being encoded. Unlike a ByteArrayOutputStream, writing a byte
+     *  takes no lock. */
+    static class Output {
+
+        /** Buffer of the encoded bytes. */
+        private byte[] buf = new byte[256];
+        /** Number of bytes written to the buffer. */
+        private int count;
+
+        /** Writes the specified byte. */
+        private void write(int b) {
+            ensureCapacity(1);
+            buf[count++] = (byte) b;
+        }
+
+        /** Writes LEN bytes of the array B from OFF. */
+        private void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        /** Grows the buffer so that it holds N more bytes. */
+        private void ensureCapacity(int n) {
+            if (count + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + n));
+            }
+        }
+
+        /** Returns the encoded bytes. */
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        /** Writes the type tag and the version of the encoding. */
+        void writeHeader(byte type) {
+            write(type);
+            write(VERSION);
+        }
+
+        /** Writes the specified non-negative number as a varint. */
+        void writeVarint(long value) {
+            while ((value & ~0x7fL) != 0) {
+                write((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        /** Writes the specified string, its length followed by its UTF-8 bytes. */
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        /** Writes the raw bytes of the specified UID. */
+        void writeUID(String uid) {
+            ensureCapacity(UID_BYTES);
+            for (int i = 0; i < UID_BYTES; i += 1) {
+                buf[count++] = (byte) (Character.digit(uid.charAt(2 * i), 16) << 4
+                        | Character.digit(uid.charAt(2 * i + 1), 16));
+            }
+        }
+    }
+
+    /** The bytes of an object being decoded. */
+    static class Input {
+
+        /** Buffer of the encoded bytes, positioned after what was read. */
+        private final ByteBuffer buf;
+
+        /** Constructor of the input of the specified encoded BYTES. */
+        Input(byte[] bytes) {
+            this.buf = ByteBuffer.wrap(bytes);
+        }
+
+        /** Reads a number written as a varint. */
+        long readVarint() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf.get();
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        /** Reads a string written by writeString. */
+        String readString() {
+            int length = (int) readVarint();
+            String s = new String(buf.array(), buf.position(), length, StandardCharsets.UTF_8);
+            buf.position(buf.position() + length);
+            return s;
+        }
+
+        /** Reads the raw bytes of a UID. */
+        String readUID() {
+            char[] uid = new char[UID_LENGTH];
+            for (int i = 0; i < UID_BYTES; i += 1) {
+                byte b = buf.get();
+                uid[2 * i] = Character.forDigit((b >> 4) & 0xf, 16);
+                uid[2 * i + 1] = Character.forDigit(b & 0xf, 16);
+            }
+            return new String(uid);
+        }
+    }
+
+}
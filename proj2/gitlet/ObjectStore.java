@@ -0,0 +1,422 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import static gitlet.Utils.*;
+
+/**
+ * Reads and writes the objects (commits and blobs) of a gitlet repository. Each loose
+ * object is stored under <code>objects/&lt;##&gt;/&lt;~uid&gt;</code> where ## is the first
+ * two digits of the UID, and repack consolidates them into a pack under objects/pack.
+ * Reads check the packs first. A store is bound to one objects directory so that the
+ * same code works against the local repository and against a remote one. Objects are
+ * written compressed with the codec configured for the repository, see {@link Codec}.
+ * @author Yuhan Zhang
+ */
+public class ObjectStore {
+
+    /** Maximum total size of the objects cached by a store. */
+    private static final long CACHE_CAPACITY = 1 << 25;
+    /** Size of the buffer of a loose file read to tell the type of its object. */
+    private static final int TYPE_BUFFER_SIZE = 512;
+
+    /** Absolute path to the objects directory of this store. */
+    private final File directory;
+    /** Packs of this store, null until first used. */
+    private List<Pack> packs;
+    /** Codec of the objects written to this store, null until first used. */
+    private Codec codec;
+    /** Objects read from this store, weighted by their size. */
+    private final LruCache<String, Serializable> cache;
+
+    /** Constructor of a store reading and writing the specified objects directory. */
+    public ObjectStore(File directory) {
+        this(directory, newCache());
+    }
+
+    /** Constructor of a store of the specified objects directory, caching the objects it
+     *  reads in CACHE, which may be shared with the stores of other sessions. */
+    public ObjectStore(File directory, LruCache<String, Serializable> cache) {
+        this.directory = directory;
+        this.cache = cache;
+    }
+
+    /** Constructor of a store writing the objects with the specified codec. */
+    public ObjectStore(File directory, Codec codec) {
+        this(directory);
+        this.codec = codec;
+    }
+
+    /** Returns a new empty cache of the objects of a store. */
+    public static LruCache<String, Serializable> newCache() {
+        return new LruCache<>("objects", CACHE_CAPACITY);
+    }
+
+    /** Returns the store of the local repository, shared by the session. */
+    public static ObjectStore local() {
+        return Session.get().getStore(Repository.OBJECTS_DIR);
+    }
+
+    /** Returns the store of the repository (.gitlet) at the specified directory, shared by
+     *  the session. */
+    public static ObjectStore of(File gitletDir) {
+        return Session.get().getStore(join(gitletDir, "objects"));
+    }
+
+    /** Returns whether the object of the specified UID is stored. */
+    public boolean contains(String uid) {
+        return isPacked(uid) || getFile(uid).exists();
+    }
+
+    /** Returns whether the object of the specified UID is in a pack. */
+    private boolean isPacked(String uid) {
+        for (Pack p : getPacks()) {
+            if (p.contains(uid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Reads the object of the specified UID, casting it to EXPECTEDCLASS. */
+    public <T extends Serializable> T read(String uid, Class<T> expectedClass) {
+        Serializable obj = cache.get(uid);
+        if (obj == null) {
+            byte[] bytes = readRaw(uid);
+            obj = parse(bytes);
+            cache.put(uid, obj, obj instanceof Blob
+                    ? ((Blob) obj).getContents().length : bytes.length);
+        }
+        return expectedClass.cast(obj);
+    }
+
+    /** Returns the object of the specified stored BYTES. */
+    private Serializable parse(byte[] bytes) {
+        if (Blob.isStored(bytes)) {
+            Trace.parsed("blob");
+            return Blob.fromStored(bytes);
+        }
+        if (Chunker.isList(bytes)) {
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            for (String chunkID : Chunker.decodeList(bytes)) {
+                contents.writeBytes(read(chunkID, Blob.class).getContents());
+            }
+            Trace.parsed("blob");
+            return new Blob(contents.toByteArray());
+        }
+        return ObjectFormat.decode(bytes);
+    }
+
+    /** Returns a stream of the contents of the blob of the specified UID. Loose blobs are
+     *  streamed from their file and decoded on the fly, instead of being read at once, and
+     *  the chunks of a chunked blob are streamed one after the other. */
+    public InputStream openBlob(String uid) {
+        File file = getFile(uid);
+        if (!isPacked(uid) && file.exists()) {
+            try {
+                // Counts the stored bytes, as for the objects read at once.
+                Trace.read(file, file.length());
+                InputStream in = Codec.decoder(
+                        new BufferedInputStream(Files.newInputStream(file.toPath())));
+                if (Arrays.equals(in.readNBytes(Blob.MAGIC.length), Blob.MAGIC)) {
+                    return in;
+                }
+                in.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (typeOf(uid) == ObjectFormat.CHUNKS) {
+            Iterator<String> chunks = getChunks(uid).iterator();
+            return new SequenceInputStream(new Enumeration<>() {
+                @Override
+                public boolean hasMoreElements() {
+                    return chunks.hasNext();
+                }
+
+                @Override
+                public InputStream nextElement() {
+                    return openBlob(chunks.next());
+                }
+            });
+        }
+        return new ByteArrayInputStream(read(uid, Blob.class).getContents());
+    }
+
+    /** Returns the UIDs of the chunks of the blob of the specified UID, or an empty list if
+     *  the blob is not chunked, which is told from its type without reading its contents. */
+    public List<String> getChunks(String uid) {
+        if (typeOf(uid) != ObjectFormat.CHUNKS) {
+            return Collections.emptyList();
+        }
+        return Chunker.decodeList(readRaw(uid));
+    }
+
+    /** Returns the type of the object of the specified UID, see ObjectFormat.typeOf. It is
+     *  read from the type byte of its pack entry, or else decoded from the first bytes of its
+     *  loose file, never reading the whole object. */
+    public byte typeOf(String uid) {
+        for (Pack p : getPacks()) {
+            if (p.contains(uid)) {
+                return p.typeOf(uid);
+            }
+        }
+        File file = getFile(uid);
+        try (InputStream in = Codec.decoder(new BufferedInputStream(
+                Files.newInputStream(file.toPath()), TYPE_BUFFER_SIZE))) {
+            Trace.read(file, Math.min(file.length(), TYPE_BUFFER_SIZE));
+            return ObjectFormat.typeOf(in.readNBytes(ObjectFormat.TYPE_BYTES));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Returns the number of bytes the object of the specified UID takes in the store, the
+     *  length of its pack entry or of its loose file, never reading the object. */
+    public long sizeOf(String uid) {
+        for (Pack p : getPacks()) {
+            long size = p.sizeOf(uid);
+            if (size >= 0) {
+                return size;
+            }
+        }
+        return getFile(uid).length();
+    }
+
+    /** Returns the serialized bytes of the object of the specified UID. */
+    public byte[] readRaw(String uid) {
+        for (Pack p : getPacks()) {
+            byte[] bytes = p.read(uid);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        return Codec.decode(readContents(getFile(uid)));
+    }
+
+    /** Writes the object under the specified UID. */
+    public void write(String uid, Serializable obj) {
+        writeRaw(uid, ObjectFormat.encode(obj));
+    }
+
+    /** Writes the blob of the specified UID, streaming its SIZE bytes of contents from IN.
+     *  Contents of at least Chunker.THRESHOLD bytes are split into chunks stored as blobs
+     *  of their own, only those not stored yet being written, and the blob is stored as
+     *  the list of its chunks. */
+    public void writeBlob(String uid, InputStream in, long size) {
+        if (size < Chunker.THRESHOLD) {
+            streamBlob(uid, in);
+            return;
+        }
+        List<String> chunks = new ArrayList<>();
+        try {
+            Chunker chunker = new Chunker(in);
+            for (byte[] chunk = chunker.next(); chunk != null; chunk = chunker.next()) {
+                String chunkID = sha1(chunk);
+                if (!contains(chunkID)) {
+                    streamBlob(chunkID, new ByteArrayInputStream(chunk));
+                }
+                chunks.add(chunkID);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        writeRaw(uid, Chunker.encodeList(chunks));
+    }
+
+    /** Writes the blob of the specified UID, streaming its contents from IN through the
+     *  codec into a temporary file, moved into place once complete. The contents are never
+     *  held in memory at once. */
+    private void streamBlob(String uid, InputStream in) {
+        File pathFolder = getFolder(uid);
+        if (!pathFolder.exists()) {
+            pathFolder.mkdir();
+        }
+        File file = getFile(uid);
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = getCodec().encoder(
+                new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            out.write(Blob.MAGIC);
+            in.transferTo(out);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        Trace.wrote(file, temp.length());
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Writes the serialized BYTES of an object under the specified UID. */
+    private void writeRaw(String uid, byte[] bytes) {
+        File pathFolder = getFolder(uid);
+        if (!pathFolder.exists()) {
+            pathFolder.mkdir();
+        }
+        writeContents(getFile(uid), getCodec().encode(bytes));
+    }
+
+    /** Returns the UIDs of all the objects stored. */
+    public List<String> list() {
+        Set<String> uids = new LinkedHashSet<>();
+        for (Pack p : getPacks()) {
+            uids.addAll(p.list());
+        }
+        uids.addAll(listLoose());
+        return new ArrayList<>(uids);
+    }
+
+    /** Returns the UIDs of all the loose objects stored. */
+    private List<String> listLoose() {
+        List<String> uids = new ArrayList<>();
+        List<String> dirs = subDirNamesIn(directory);
+        if (dirs == null) {
+            return uids;
+        }
+        for (String dir : dirs) {
+            // Skips anything but the two-digit object subfolders.
+            if (dir.length() != 2) {
+                continue;
+            }
+            List<String> files = plainFilenamesIn(join(directory, dir));
+            if (files == null) {
+                continue;
+            }
+            for (String file : files) {
+                // Skips the temporary files of objects being written.
+                if (file.length() == UID_LENGTH - 2) {
+                    uids.add(dir + file);
+                }
+            }
+        }
+        return uids;
+    }
+
+    /** Copies the object of the specified UID into another store, if it is not there yet.
+     *  The object is encoded with the codec of the other store. */
+    public void copyTo(String uid, ObjectStore other) {
+        if (other.contains(uid)) {
+            return;
+        }
+        other.writeRaw(uid, readRaw(uid));
+    }
+
+    /** Copies the objects of the specified UIDs from another store into a single new pack
+     *  of this store. PATHS maps the UIDs of blobs to a path tracking them, to choose the
+     *  bases of deltas. */
+    public void receive(List<String> uids, Map<String, String> paths, ObjectStore from) {
+        Pack pack = Pack.write(join(directory, "pack"), uids, paths, from);
+        if (packs != null) {
+            packs.add(pack);
+        }
+    }
+
+    /** Consolidates all the objects of the store into a single pack, storing blobs as
+     *  deltas where possible, then deletes the loose objects and the previous packs. */
+    public void repack() {
+        List<String> loose = listLoose();
+        List<Pack> oldPacks = getPacks();
+        if (loose.isEmpty() && oldPacks.size() <= 1) {
+            return;
+        }
+        // Finds a file name of each blob to choose the candidates of deltas, reading only
+        // the trees: blobs, chunked ones above all, are never parsed, only copied raw.
+        List<String> uids = list();
+        Map<String, String> paths = new HashMap<>();
+        for (String uid : uids) {
+            if (typeOf(uid) == ObjectFormat.TREE) {
+                Tree tree = read(uid, Tree.class);
+                for (Map.Entry<String, String> e : tree.getEntries().entrySet()) {
+                    if (!Tree.isDirectory(e.getKey())) {
+                        paths.putIfAbsent(e.getValue(), e.getKey());
+                    }
+                }
+            }
+        }
+        Pack pack = Pack.write(join(directory, "pack"), uids, paths, this);
+        // Reads every object back from the new pack before deleting anything.
+        for (String uid : uids) {
+            byte[] bytes = pack.read(uid);
+            if (bytes == null || !Arrays.equals(bytes, readRaw(uid))) {
+                boolean replaced = oldPacks.stream()
+                        .anyMatch(p -> p.getName().equals(pack.getName()));
+                if (!replaced) {
+                    pack.delete();
+                }
+                throw error("Cannot read back the object %s from the new pack.", uid);
+            }
+        }
+        pack.close();
+        for (Pack p : oldPacks) {
+            if (!p.getName().equals(pack.getName())) {
+                p.delete();
+            }
+        }
+        for (String uid : loose) {
+            getFile(uid).delete();
+            getFolder(uid).delete();
+        }
+        packs = null;
+    }
+
+    /** Closes the files of the store left open for reading. */
+    public void close() {
+        if (packs != null) {
+            for (Pack p : packs) {
+                p.close();
+            }
+        }
+    }
+
+    /** Returns the cache of the objects read from this store. */
+    public LruCache<String, Serializable> getCache() {
+        return this.cache;
+    }
+
+    /** Returns the packs of this store. */
+    private List<Pack> getPacks() {
+        if (packs == null) {
+            packs = Pack.findAll(join(directory, "pack"));
+        }
+        return packs;
+    }
+
+    /** Returns the codec of the objects written to this store. */
+    public Codec getCodec() {
+        if (codec == null) {
+            codec = Codec.of(directory.getParentFile());
+        }
+        return codec;
+    }
+
+    /** Returns the path to the objects directory of this store. */
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    /** Returns the path to the subfolder holding the object of the specified UID. */
+    public File getFolder(String uid) {
+        return join(directory, uid.substring(0, 2));
+    }
+
+    /** Returns the path to the file holding the object of the specified UID. */
+    public File getFile(String uid) {
+        return join(getFolder(uid), uid.substring(2));
+    }
+
+}
@@ -0,0 +1,365 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static gitlet.Utils.*;
+import static gitlet.CommitIndex.*;
+
+/**
+ * Represents a pack file consolidating many objects of a repository, together with its
+ * index file. The pack file holds a header of the magic number, the version and the number
+ * of objects, followed by an entry for each object: a type byte, then the length-prefixed
+ * bytes of either the whole object or the raw UID of a base object and a delta against it,
+ * compressed with the codec of the store. The low bit of the type byte tells a delta from a
+ * whole object, and the other bits hold the type of the object (see ObjectFormat.typeOf),
+ * so that it is known without reading the object.
+ * The index file holds a 256-entry fan-out table, the sorted raw UIDs of the objects and
+ * the offset of each of them in the pack file. The index file is read through a memory
+ * mapping, while the entries of the pack file are read with positional reads at their 64-bit
+ * offsets, since a pack of large files may exceed the 2 GB a single mapping can hold.
+ * <p>
+ * Blobs are written ordered by the path tracking them and by stored size, so that each version of
+ * a file is tried as a delta against the few versions written right before it.
+ * @author Yuhan Zhang
+ */
+public class Pack {
+
+    /** Magic number at the beginning of the pack file, "PACK". */
+    private static final int MAGIC = 0x5041434b;
+    /** Version of the format of the pack file. */
+    private static final int VERSION = 4;
+    /** Entry type holding the whole object. */
+    private static final int FULL = 0;
+    /** Entry type holding a delta against a base object. */
+    private static final int DELTA = 1;
+    /** Number of previously written objects tried as the base of a delta. */
+    private static final int WINDOW = 10;
+    /** Maximum length of a chain of deltas. */
+    private static final int MAX_DEPTH = 10;
+    /** Number of base objects kept in memory when reading deltas. */
+    private static final int BASE_CACHE_SIZE = 32;
+
+    /** Absolute path to the pack file. */
+    private final File packFile;
+    /** Absolute path to the index file of the pack. */
+    private final File idxFile;
+    /** Mapped index file, null until first used. */
+    private MappedByteBuffer idx;
+    /** Open channel of the pack file, null until first used. */
+    private FileChannel pack;
+    /** Recently used base objects of deltas, least recently used first. */
+    private final Map<String, byte[]> baseCache =
+        new LinkedHashMap<String, byte[]>(BASE_CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > BASE_CACHE_SIZE;
+            }
+        };
+
+    /** Constructor of the pack whose index file is IDXFILE. */
+    public Pack(File idxFile) {
+        String name = idxFile.getName();
+        this.idxFile = idxFile;
+        this.packFile = join(idxFile.getParentFile(),
+                name.substring(0, name.length() - ".idx".length()) + ".pack");
+    }
+
+    /** Returns all the packs in the specified pack directory. */
+    public static List<Pack> findAll(File dir) {
+        List<Pack> packs = new ArrayList<>();
+        List<String> files = plainFilenamesIn(dir);
+        if (files != null) {
+            for (String s : files) {
+                if (s.endsWith(".idx")) {
+                    packs.add(new Pack(join(dir, s)));
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Writes the objects of the specified UIDs read from STORE into a new pack
+     *  in the directory DIR, and returns it. PATHS maps the UIDs of blobs to a path
+     *  tracking them, only those blobs are stored as deltas. The pack file is streamed
+     *  to disk. */
+    public static Pack write(File dir, List<String> uids, Map<String, String> paths,
+                             ObjectStore store) {
+        List<String> sorted = new ArrayList<>(uids);
+        Collections.sort(sorted);
+        String name = "pack-" + sha1(String.join("", sorted));
+        Pack p = new Pack(join(dir, name + ".idx"));
+        if (!dir.exists()) {
+            dir.mkdir();
+        }
+
+        // Orders the other objects first, then the blobs by path and decreasing stored size,
+        // which is known without reading them.
+        Map<String, Long> sizes = new HashMap<>();
+        for (String uid : paths.keySet()) {
+            sizes.put(uid, store.sizeOf(uid));
+        }
+        List<String> order = new ArrayList<>(sorted);
+        order.sort(Comparator.comparing((String uid) -> paths.containsKey(uid))
+                .thenComparing(uid -> paths.getOrDefault(uid, ""))
+                .thenComparing(uid -> -sizes.getOrDefault(uid, 0L)));
+
+        // Streams the objects into the pack file, recording their offsets.
+        Map<String, Long> offsets = new HashMap<>();
+        Deque<String> window = new ArrayDeque<>();
+        Map<String, byte[]> windowBytes = new HashMap<>();
+        Map<String, Integer> depths = new HashMap<>();
+        Codec codec = store.getCodec();
+        File temp = join(dir, name + ".pack.tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(order.size());
+            long offset = 12;
+            for (String uid : order) {
+                byte[] bytes = store.readRaw(uid);
+                offsets.put(uid, offset);
+
+                // Tries the objects in the window as the base of a delta.
+                String base = null;
+                byte[] delta = null;
+                if (paths.containsKey(uid)) {
+                    for (String candidate : window) {
+                        if (depths.get(candidate) >= MAX_DEPTH) {
+                            continue;
+                        }
+                        byte[] d = Delta.create(windowBytes.get(candidate), bytes);
+                        if (d.length < bytes.length / 2
+                                && (delta == null || d.length < delta.length)) {
+                            base = candidate;
+                            delta = d;
+                        }
+                    }
+                    window.addLast(uid);
+                    windowBytes.put(uid, bytes);
+                    if (window.size() > WINDOW) {
+                        windowBytes.remove(window.removeFirst());
+                    }
+                }
+
+                int type = ObjectFormat.typeOf(bytes) << 1;
+                if (delta == null) {
+                    depths.put(uid, 0);
+                    bytes = codec.encode(bytes);
+                    out.writeByte(type | FULL);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                    offset += 5 + bytes.length;
+                } else {
+                    depths.put(uid, depths.get(base) + 1);
+                    delta = codec.encode(delta);
+                    out.writeByte(type | DELTA);
+                    out.writeInt(ENTRY_SIZE + delta.length);
+                    out.write(hexToBytes(base));
+                    out.write(delta);
+                    offset += 5 + ENTRY_SIZE + delta.length;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        Trace.wrote(p.packFile, temp.length());
+        if (!temp.renameTo(p.packFile)) {
+            throw error("Cannot write the pack file.");
+        }
+
+        // Writes the index file last, so that the pack is only visible once complete.
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + sorted.size() * (ENTRY_SIZE + 8));
+        int[] fanout = new int[FANOUT_SIZE];
+        for (String uid : sorted) {
+            fanout[Integer.parseInt(uid.substring(0, 2), 16)] += 1;
+        }
+        int total = 0;
+        for (int count : fanout) {
+            total += count;
+            buf.putInt(total);
+        }
+        for (String uid : sorted) {
+            buf.put(hexToBytes(uid));
+        }
+        for (String uid : sorted) {
+            buf.putLong(offsets.get(uid));
+        }
+        replaceContents(p.idxFile, buf.array());
+        return p;
+    }
+
+    /** Returns the bytes of the object of the specified UID, or null if it is not packed. */
+    public byte[] read(String uid) {
+        int pos = find(uid);
+        if (pos < 0) {
+            return null;
+        }
+        if (pack == null) {
+            open();
+        }
+        long offset = getOffset(pos);
+        ByteBuffer header = readAt(offset, 5);
+        int type = header.get() & DELTA;
+        int length = header.getInt();
+        if (type == FULL) {
+            return Codec.decode(readAt(offset + 5, length).array());
+        }
+
+        // Applies the delta to its base, which is looked up in the cache first.
+        ByteBuffer entry = readAt(offset + 5, length);
+        byte[] baseID = new byte[ENTRY_SIZE];
+        entry.get(baseID);
+        byte[] delta = new byte[length - ENTRY_SIZE];
+        entry.get(delta);
+        delta = Codec.decode(delta);
+        String base = bytesToHex(baseID);
+        byte[] baseBytes = baseCache.get(base);
+        if (baseBytes == null) {
+            baseBytes = read(base);
+            baseCache.put(base, baseBytes);
+        }
+        return Delta.apply(baseBytes, delta);
+    }
+
+    /** Returns the type of the object of the specified UID (see ObjectFormat.typeOf), read
+     *  from the type byte of its entry. Returns 0 if the object is not packed. */
+    public byte typeOf(String uid) {
+        int pos = find(uid);
+        if (pos < 0) {
+            return 0;
+        }
+        if (pack == null) {
+            open();
+        }
+        return (byte) ((readAt(getOffset(pos), 1).get() & 0xff) >> 1);
+    }
+
+    /** Returns the number of bytes the entry of the object of the specified UID holds,
+     *  compressed and maybe a delta, read from its header. Returns -1 if it is not packed. */
+    public long sizeOf(String uid) {
+        int pos = find(uid);
+        if (pos < 0) {
+            return -1;
+        }
+        if (pack == null) {
+            open();
+        }
+        return readAt(getOffset(pos) + 1, 4).getInt();
+    }
+
+    /** Returns the offset in the pack file of the entry at the specified position of the
+     *  index. */
+    private long getOffset(int pos) {
+        return idx.getLong(HEADER_SIZE + count() * ENTRY_SIZE + pos * 8);
+    }
+
+    /** Opens the pack file and checks its header. */
+    private void open() {
+        try {
+            pack = FileChannel.open(packFile.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        ByteBuffer header = readAt(0, 8);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw error("Unknown format of the pack %s.", getName());
+        }
+    }
+
+    /** Returns a buffer of the LENGTH bytes of the pack file at the specified offset. */
+    private ByteBuffer readAt(long offset, int length) {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        try {
+            while (buf.hasRemaining()) {
+                if (pack.read(buf, offset + buf.position()) < 0) {
+                    throw error("Truncated pack %s.", getName());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        Trace.read(packFile, length);
+        return buf.flip();
+    }
+
+    /** Closes the pack file, which is opened again by the next read. */
+    public void close() {
+        if (pack != null) {
+            try {
+                pack.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            pack = null;
+        }
+    }
+
+    /** Returns whether the object of the specified UID is in the pack. */
+    public boolean contains(String uid) {
+        return find(uid) >= 0;
+    }
+
+    /** Returns the UIDs of all the objects in the pack, in sorted order. */
+    public List<String> list() {
+        mapIndex();
+        List<String> uids = new ArrayList<>();
+        byte[] entry = new byte[ENTRY_SIZE];
+        for (int i = 0; i < count(); i += 1) {
+            idx.get(HEADER_SIZE + i * ENTRY_SIZE, entry);
+            uids.add(bytesToHex(entry));
+        }
+        return uids;
+    }
+
+    /** Deletes the pack and its index file. */
+    public void delete() {
+        idx = null;
+        close();
+        idxFile.delete();
+        packFile.delete();
+    }
+
+    /** Returns the name of the pack. */
+    public String getName() {
+        return packFile.getName();
+    }
+
+    /** Returns the position of the specified UID in the index, or -1 if it is absent. */
+    private int find(String uid) {
+        mapIndex();
+        int firstByte = Integer.parseInt(uid.substring(0, 2), 16);
+        int lo = firstByte == 0 ? 0 : idx.getInt((firstByte - 1) * 4);
+        int hi = idx.getInt(firstByte * 4);
+        byte[] key = hexToBytes(uid);
+        int pos = search(idx, HEADER_SIZE, lo, hi, key);
+        if (pos >= hi) {
+            return -1;
+        }
+        byte[] entry = new byte[ENTRY_SIZE];
+        idx.get(HEADER_SIZE + pos * ENTRY_SIZE, entry);
+        return compare(entry, key) == 0 ? pos : -1;
+    }
+
+    /** Returns the number of objects in the pack. */
+    private int count() {
+        return idx.getInt((FANOUT_SIZE - 1) * 4);
+    }
+
+    /** Maps the index file into memory if it is not mapped yet. */
+    private void mapIndex() {
+        if (idx == null) {
+            idx = mapContents(idxFile);
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/**
+ * Represents the packed-refs file of a repository, holding the heads of many branches in a
+ * single file instead of one reference file each. Each line holds the UID of the head commit
+ * of a branch, a space and the name of the branch, and the lines are sorted by name, so that
+ * a branch is found by a binary search over the lines. A loose reference file of a branch
+ * takes precedence over its line, so that updating a branch never rewrites this file.
+ * @author Yuhan Zhang
+ */
+public class PackedRefs {
+
+    /** Number of bytes before the name of a branch on a line. */
+    private static final int NAME_OFFSET = UID_LENGTH + 1;
+
+    /** Absolute path to the packed-refs file. */
+    private final File file;
+    /** Contents of the packed-refs file, empty if there is none. */
+    private final byte[] contents;
+
+    /** Constructor of the packed-refs of the specified file. */
+    private PackedRefs(File file) {
+        this.file = file;
+        this.contents = file.isFile() ? readContents(file) : new byte[0];
+    }
+
+    /** Returns the packed-refs of the repository (.gitlet) DIRECTORY, cached by the
+     *  session. */
+    public static PackedRefs of(File directory) {
+        File file = join(directory, "packed-refs");
+        return Session.get().read(file, () -> new PackedRefs(file));
+    }
+
+    /** Returns the UID of the head commit of the branch of the specified name, or null if it
+     *  is not packed. */
+    public String find(String name) {
+        int lo = 0;
+        int hi = contents.length;
+        while (lo < hi) {
+            // Searches the line around the middle of the remaining bytes.
+            int start = (lo + hi) >>> 1;
+            while (start > lo && contents[start - 1] != '\n') {
+                start -= 1;
+            }
+            int end = lineEnd(start);
+            int cmp = name.compareTo(nameAt(start, end));
+            if (cmp == 0) {
+                return new String(contents, start, UID_LENGTH, StandardCharsets.US_ASCII);
+            } else if (cmp < 0) {
+                hi = start;
+            } else {
+                lo = end + 1;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the map of the names of all the packed branches to the UIDs of their head
+     *  commits, sorted by name. */
+    public SortedMap<String, String> readAll() {
+        SortedMap<String, String> refs = new TreeMap<>();
+        for (int start = 0; start < contents.length; start = lineEnd(start) + 1) {
+            refs.put(nameAt(start, lineEnd(start)),
+                    new String(contents, start, UID_LENGTH, StandardCharsets.US_ASCII));
+        }
+        return refs;
+    }
+
+    /** Writes the packed-refs file of the specified map of branch names to the UIDs of their
+     *  head commits, or deletes it if there are none. */
+    public void write(SortedMap<String, String> refs) {
+        if (refs.isEmpty()) {
+            file.delete();
+            Session.get().evict(file);
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> e : refs.entrySet()) {
+            sb.append(e.getValue()).append(' ').append(e.getKey()).append('\n');
+        }
+        writeContents(file, sb.toString());
+        Session.get().evict(file);
+    }
+
+    /** Removes the branch of the specified name, if packed. */
+    public void remove(String name) {
+        if (find(name) != null) {
+            SortedMap<String, String> refs = readAll();
+            refs.remove(name);
+            write(refs);
+        }
+    }
+
+    /** Returns the index of the end of the line starting at START. */
+    private int lineEnd(int start) {
+        int end = start;
+        while (end < contents.length && contents[end] != '\n') {
+            end += 1;
+        }
+        return end;
+    }
+
+    /** Returns the name of the branch on the line from START to END. */
+    private String nameAt(int start, int end) {
+        return new String(contents, start + NAME_OFFSET, end - start - NAME_OFFSET,
+                StandardCharsets.UTF_8);
+    }
+
+}
@@ -2,7 +2,6 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
 import java.util.*;
 
 import static gitlet.Utils.*;
@@ -12,7 +11,10 @@ import static gitlet.Repository.*;
  * Represents a gitlet remote object.
  * @author Yuhan Zhang
  */
-public class Remote implements Serializable {
+public class Remote implements Dumpable {
+
+    /** Number of objects from which a transfer is sent as a pack rather than loose. */
+    private static final int UNPACK_LIMIT = 100;
 
     /** Name of this remote. */
     private final String name;
@@ -34,7 +36,26 @@ public class Remote implements Serializable {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        writeObject(this.getRefFile(), this);
+        writeContents(this.getRefFile(), ObjectFormat.encode(this));
+    }
+
+    /** Constructor of a decoded remote of the specified fields. */
+    private Remote(String name, File path, File directory) {
+        this.name = name;
+        this.path = path;
+        this.directory = directory;
+    }
+
+    /** Encodes the remote: its name, its path and the path to its repository. */
+    void encode(ObjectFormat.Output out) {
+        out.writeString(name);
+        out.writeString(path.getPath());
+        out.writeString(directory.getPath());
+    }
+
+    /** Returns the remote decoded from IN. */
+    static Remote decode(ObjectFormat.Input in) {
+        return new Remote(in.readString(), new File(in.readString()), new File(in.readString()));
     }
 
     /** Saves the given login information under the given remote name. */
@@ -56,36 +77,115 @@ public class Remote implements Serializable {
     public static void push(String remoteName, String remoteBranchName) {
         Remote remote = find(remoteName);
         Branch remoteBranch = remote.findBranch(remoteBranchName);
-        Set<Commit> localCommits = getCurrentBranch().getAllCommits();
+        ObjectStore localObjects = ObjectStore.local();
+        String head = getCurrentBranch().getCommitID();
         // If the remote branch's head is not in the history of the current local head.
-        Set<String> commitIds = new HashSet<>();
-        for (Commit c : localCommits) {
-            commitIds.add(c.getUID());
-        }
-        if (!commitIds.contains(remoteBranch.getCommit().getUID())) {
+        CommitGraph graph = new CommitGraph(localObjects);
+        if (!graph.isAncestor(remoteBranch.getCommitID(), head)) {
             exit("Please pull down remote changes before pushing.");
         }
-        // Saves the commits and updates the remote branch.
-        for (Commit c : localCommits) {
-            c.saveTo(remote.directory);
-        }
-        remoteBranch.resetCommit(getCurrentCommit());
+        // Sends the objects missing from the remote, and updates the remote branch.
+        transfer(graph, head, remote.getHeads(), localObjects, remoteBranch.getObjectStore());
+        remoteBranch.moveCommit(getCurrentCommit());
     }
 
     /** Brings down commits from the remote repository into the local repository. */
     public static void fetch(String remoteName, String remoteBranchName) {
         String localBranchName = remoteName + "/" + remoteBranchName;
         Branch remoteBranch = find(remoteName).findBranch(remoteBranchName);
+        // Receives the objects missing from the local repository.
+        List<String> haves = new ArrayList<>();
+        for (Branch b : Branch.findAll()) {
+            haves.add(b.getCommitID());
+        }
+        // Walks the remote history in memory, leaving the remote repository untouched.
+        ObjectStore remoteObjects = remoteBranch.getObjectStore();
+        transfer(new CommitGraph(remoteObjects, false), remoteBranch.getCommitID(), haves,
+                remoteObjects, ObjectStore.local());
+        // Updates the local branch.
         Branch localBranch = Branch.find(localBranchName, 0);
         if (localBranch == null) {
             localBranch = new Branch(localBranchName);
         }
-        // Saves the commits and updates the local branch.
-        Set<Commit> commits = remoteBranch.getAllCommits();
+        localBranch.moveCommit(remoteBranch.getCommit());
+    }
+
+    /** Sends the objects of the history of the commit WANT from one store to another,
+     *  except those the receiver already has: the commits reachable from the heads HAVES of
+     *  the receiving repository, and any other object it turns out to hold. The commits are
+     *  negotiated with the GRAPH of the sending store. The objects are sent as a single
+     *  pack, or as loose objects if they are only a few. */
+    private static void transfer(CommitGraph graph, String want, Collection<String> haves,
+                                 ObjectStore from, ObjectStore to) {
+        // Negotiates the commits with bitmaps of the sender's commit-graph.
+        Bitmap wanted = graph.reachable(want);
+        for (String have : haves) {
+            wanted = wanted.andNot(graph.reachable(have));
+        }
+
+        // Lists the missing commits, parents first, and the trees and blobs they add.
+        List<Commit> commits = new ArrayList<>();
+        List<String> objects = new ArrayList<>();
+        Map<String, String> paths = new HashMap<>();
+        Set<String> seen = new HashSet<>();
+        for (String uid : graph.getUIDs(wanted)) {
+            if (to.contains(uid)) {
+                continue;
+            }
+            Commit c = from.read(uid, Commit.class);
+            commits.add(c);
+            listTree(c.getTree(), "", from, to, seen, objects, paths);
+        }
+        if (commits.isEmpty()) {
+            return;
+        }
+
+        // Sends the trees and blobs before the commits tracking them.
+        List<String> uids = new ArrayList<>(objects);
+        for (Commit c : commits) {
+            uids.add(c.getUID());
+        }
+        if (uids.size() < UNPACK_LIMIT) {
+            for (String uid : uids) {
+                from.copyTo(uid, to);
+            }
+        } else {
+            to.receive(uids, paths, from);
+        }
+        List<String> commitIDs = uids.subList(objects.size(), uids.size());
+        new CommitIndex(to).addAll(commitIDs);
+        MessageIndex messages = new MessageIndex(to);
         for (Commit c : commits) {
-            c.save();
+            messages.add(c);
+        }
+    }
+
+    /** Adds into OBJECTS the tree of the specified UID and the objects under it which the
+     *  receiver TO lacks, every object after those it refers to, and the path under PREFIX
+     *  of each blob into PATHS. A tree the receiver holds is skipped with all its contents,
+     *  since objects are always received after those they refer to. */
+    private static void listTree(String treeID, String prefix, ObjectStore from, ObjectStore to,
+                                 Set<String> seen, List<String> objects,
+                                 Map<String, String> paths) {
+        if (!seen.add(treeID) || to.contains(treeID)) {
+            return;
+        }
+        for (Map.Entry<String, String> e : Tree.read(from, treeID).getEntries().entrySet()) {
+            String uid = e.getValue();
+            if (Tree.isDirectory(e.getKey())) {
+                listTree(uid, prefix + e.getKey(), from, to, seen, objects, paths);
+            } else if (seen.add(uid) && !to.contains(uid)) {
+                // Sends the chunks of a chunked blob the receiver lacks before it.
+                for (String chunk : from.getChunks(uid)) {
+                    if (seen.add(chunk) && !to.contains(chunk)) {
+                        objects.add(chunk);
+                    }
+                }
+                objects.add(uid);
+                paths.put(uid, prefix + e.getKey());
+            }
         }
-        localBranch.resetCommit(remoteBranch.getCommit());
+        objects.add(treeID);
     }
 
     /** Fetches the specified remote branch and merges that fetch into the current branch. */
@@ -101,7 +201,7 @@ public class Remote implements Serializable {
         Set<Remote> remotes = new HashSet<>();
         if (remoteNames != null) {
             for (String name : remoteNames) {
-                remotes.add(readObject(join(dir, name), Remote.class));
+                remotes.add((Remote) ObjectFormat.decode(readContents(join(dir, name))));
             }
         }
         return remotes;
@@ -130,15 +230,7 @@ public class Remote implements Serializable {
         if (!dir.exists()) {
             exit("Remote directory not found.");
         }
-        List<String> branchNames = plainFilenamesIn(dir);
-        Branch branch = null;
-        if (branchNames != null) {
-            for (String s : branchNames) {
-                if (remoteBranchName.equals(s)) {
-                    branch = readObject(join(dir, s), Branch.class);
-                }
-            }
-        }
+        Branch branch = Branch.read(directory, remoteBranchName);
         // If the remote repository does not have the given branch name.
         if (branch == null) {
             exit("That remote does not have that branch.");
@@ -146,9 +238,23 @@ public class Remote implements Serializable {
         return branch;
     }
 
+    /** Returns the UIDs of the head commits of all the branches of the remote. */
+    public List<String> getHeads() {
+        List<String> heads = new ArrayList<>();
+        for (Branch b : Branch.findAll(directory)) {
+            heads.add(b.getCommitID());
+        }
+        return heads;
+    }
+
     /** Return the absolute path to the refs. */
     public File getRefFile() {
         return join(GITLET_DIR, this.path);
     }
 
+    /** Prints the fields of the remote. */
+    @Override
+    public void dump() {
+        System.out.printf("remote %s%npath %s%ndirectory %s%n", name, path, directory);
+    }
 }
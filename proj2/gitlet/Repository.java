@@ -1,6 +1,9 @@
 package gitlet;
 
 import java.io.File;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
 
 import static gitlet.Utils.*;
 
@@ -49,12 +52,15 @@ public class Repository {
         join(LOGS_DIR, "refs").mkdir();
         join(LOGS_DIR, "refs", "heads").mkdir();
 
+        // Creates the config with the default compression codec.
+        Config.set(GITLET_DIR, "compression", Codec.DEFLATE.getName());
+
         // Creates staging area.
-        writeObject(INDEX, new Index());
+        new Index().save();
 
         // Creates default branch.
         Branch master = new Branch("master");
-        writeContents(HEAD, master.getPath().toString());
+        setCurrentBranch(master);
 
         // Creates initial commit.
         Commit init = new Commit();
@@ -86,6 +92,7 @@ public class Repository {
         if (message.length() == 0) {
             exit("Please enter a commit message.");
         }
+        Trace.phase("commit");
         Commit c = new Commit(message);
         c.commit();
     }
@@ -93,14 +100,25 @@ public class Repository {
     /** Starting at the current head commit,
      *  displays each commit backwards until the initial commit. */
     public static void log() {
-        Branch b = getCurrentBranch();
-        System.out.print(readContentsAsString(b.getLogFile()));
-    }
-
-    /** Displays information about all commits ever made. */
-    public static void globalLog() {
-        for (Commit c : Commit.findAll()) {
-            System.out.println(c.toString());
+        getCurrentBranch().getLog().print();
+    }
+
+    /** Displays information about all commits ever made from the newest to the oldest,
+     *  streaming them one at a time in the order of the timestamps of the commit-graph.
+     *  Stops after LIMIT commits unless it is negative, and at the first commit made before
+     *  SINCE unless it is null. */
+    public static void globalLog(int limit, Date since) {
+        ObjectStore store = ObjectStore.local();
+        CommitGraph graph = new CommitGraph(store);
+        CommitIndex index = new CommitIndex(store);
+        // Every commit is in the index, so the graph misses none if it holds as many.
+        if (graph.size() < index.size()) {
+            graph.updateAll(index);
+        }
+        Iterator<String> commits = graph.newestFirst(
+                since == null ? Long.MIN_VALUE : since.getTime());
+        for (int count = 0; count != limit && commits.hasNext(); count += 1) {
+            System.out.println(Commit.read(commits.next()).toString());
         }
     }
 
@@ -114,7 +132,10 @@ public class Repository {
     /** Displays what branches currently exist, (marking the current branch with a *) and
      *  what files have been staged for addition or removal. */
     public static void status() {
-        System.out.print(getIndex().toString());
+        Index idx = getIndex();
+        Trace.phase("status");
+        System.out.print(idx.toString());
+        idx.saveStats();
     }
 
     /** Takes the version of the file as it exists in the commit with the given id,
@@ -125,11 +146,14 @@ public class Repository {
             commitID = getCurrentCommit().getUID();
         }
         // Checks whether the file exists in the specified commit.
-        Blob b = Commit.find(commitID).getBlob(join(CWD, fileName));
-        if (b == null) {
+        String blobID = Commit.find(commitID).getBlobID(fileName);
+        if (blobID == null) {
             exit("File does not exist in that commit.");
         } else {
-            b.overwrite();
+            Worktree.local().write(Map.of(fileName, blobID));
+            Index idx = getIndex();
+            idx.record(fileName, blobID);
+            idx.save();
         }
     }
 
@@ -141,9 +165,9 @@ public class Repository {
             exit("No need to checkout the current branch.");
         }
         Branch b = Branch.find(branchName, 1);
-        getCurrentCommit().deleteTrackedFiles(b.getCommit());
-        writeContents(HEAD, b.getPath().toString());
-        reset(getCurrentCommit().getUID());
+        Trace.phase("checkout");
+        getIndex().checkout(getCurrentCommit(), b.getCommit());
+        setCurrentBranch(b);
     }
 
     /** Creates a new branch with the given name, and points it at the current head commit.  */
@@ -182,9 +206,21 @@ public class Repository {
         Merge.merge(getCurrentBranch(), other);
     }
 
-    /** Returns the object of the current working branch. */
+    /** Consolidates all loose objects of the repository into a single pack, the pending
+     *  commit UIDs into the commit index, and all the branch references into the
+     *  packed-refs. */
+    public static void repack() {
+        ObjectStore store = ObjectStore.local();
+        store.repack();
+        new CommitIndex(store).merge();
+        Branch.packRefs(GITLET_DIR);
+    }
+
+    /** Returns the object of the current working branch, cached by the session. */
     public static Branch getCurrentBranch() {
-        return readObject(join(GITLET_DIR, readContentsAsString(HEAD)), Branch.class);
+        Session session = Session.get();
+        String path = session.read(HEAD, () -> readContentsAsString(HEAD));
+        return Branch.readPath(GITLET_DIR, path);
     }
 
     /** Returns the object of the current (latest) commit. */
@@ -192,9 +228,15 @@ public class Repository {
         return getCurrentBranch().getCommit();
     }
 
-    /** Returns the repository staging area. */
+    /** Returns the repository staging area, cached by the session. */
     public static Index getIndex() {
-        return readObject(INDEX, Index.class);
+        return Session.get().read(INDEX, Index::load);
+    }
+
+    /** Makes the specified branch the current branch. */
+    private static void setCurrentBranch(Branch b) {
+        writeContents(HEAD, b.getPath().toString());
+        Session.get().evict(HEAD);
     }
 
 }
@@ -0,0 +1,141 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Represents the session of one gitlet command, caching what the command reads from the
+ * repositories so that reading it again costs nothing. The session holds one object store
+ * per objects directory, each caching the objects it parses, and caches the parsed contents
+ * of repository files such as the HEAD, the branch references and the staging area. Objects
+ * never change once written, and every write of a cached file replaces or evicts its entry,
+ * so the caches are never stale within a command. Setting the "session.stats" entry of the
+ * config to true prints the hit rate of each cache at the end of the command. The session of
+ * a traced command also holds its {@link Trace}.
+ * @author Yuhan Zhang
+ */
+public class Session {
+
+    /** Maximum number of repository files cached. */
+    private static final int FILE_CAPACITY = 256;
+
+    /** Session of the running command. */
+    private static Session current;
+    /** Caches of the objects of each objects directory kept from one session to the next, as
+     *  by a daemon, or null if every session starts cold. */
+    private static Map<File, LruCache<String, Serializable>> keptObjects;
+
+    /** Name of the command of this session. */
+    private final String command;
+    /** Trace of the command of this session, or null if it is not traced. */
+    private final Trace trace;
+    /** Object stores of this session by objects directory. */
+    private final Map<File, ObjectStore> stores = new HashMap<>();
+    /** Parsed contents of the repository files read by this session. */
+    private final LruCache<File, Object> files = new LruCache<>("files", FILE_CAPACITY);
+
+    /** Constructor of the session of the specified command, traced by TRACE unless it is
+     *  null. */
+    private Session(String command, Trace trace) {
+        this.command = command;
+        this.trace = trace;
+    }
+
+    /** Starts the session of the specified command, traced by TRACE unless it is null,
+     *  dropping whatever was cached before but the objects kept by keepObjects. */
+    public static Session begin(String command, Trace trace) {
+        current = new Session(command, trace);
+        return current;
+    }
+
+    /** Returns the session of the running command, started if none is. */
+    public static Session get() {
+        if (current == null) {
+            current = new Session(null, null);
+        }
+        return current;
+    }
+
+    /** Returns the trace of the running command, or null if it is not traced. */
+    public static Trace trace() {
+        return current == null ? null : current.trace;
+    }
+
+    /** Keeps the objects cached by every session from now on for the next sessions, which
+     *  is safe since objects never change. The repository files are still read again by every
+     *  session, since other processes may write them. */
+    public static void keepObjects() {
+        keptObjects = new HashMap<>();
+    }
+
+    /** Ends the session, printing the statistics of its caches if the config asks so, and
+     *  the report of its trace, then closes its object stores. */
+    public void end() {
+        if (Repository.GITLET_DIR.isDirectory()
+                && "true".equals(Config.get(Repository.GITLET_DIR, "session.stats"))) {
+            System.err.println(getStats());
+        }
+        if (trace != null) {
+            // Keeps the report after what the command printed.
+            System.out.flush();
+            System.err.println(trace.end());
+        }
+        for (ObjectStore store : stores.values()) {
+            store.close();
+        }
+        if (current == this) {
+            current = null;
+        }
+    }
+
+    /** Returns the statistics of the caches of the session. */
+    public String getStats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[session] ").append(command).append(": ").append(files);
+        for (ObjectStore store : stores.values()) {
+            sb.append(", ").append(store.getCache());
+        }
+        return sb.toString();
+    }
+
+    /** Returns the object store of the specified objects directory, shared by the whole
+     *  session. */
+    public ObjectStore getStore(File directory) {
+        return stores.computeIfAbsent(key(directory), d -> keptObjects == null
+                ? new ObjectStore(d)
+                : new ObjectStore(d, keptObjects.computeIfAbsent(d, k -> ObjectStore.newCache())));
+    }
+
+    /** Returns the parsed contents of the specified repository file, read with READER unless
+     *  they are cached. */
+    @SuppressWarnings("unchecked")
+    public <T> T read(File file, Supplier<T> reader) {
+        Object value = files.get(key(file));
+        if (value == null) {
+            value = reader.get();
+            files.put(key(file), value);
+        }
+        return (T) value;
+    }
+
+    /** Records that the specified repository file was written with the parsed contents
+     *  VALUE. */
+    public void wrote(File file, Object value) {
+        files.put(key(file), value);
+    }
+
+    /** Records that the specified repository file was written or deleted, evicting its
+     *  cached contents. */
+    public void evict(File file) {
+        files.remove(key(file));
+    }
+
+    /** Returns the key of the specified file, its absolute and normalized path. */
+    private static File key(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toFile();
+    }
+
+}
@@ -0,0 +1,264 @@
+package gitlet;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static gitlet.Utils.*;
+
+/**
+ * Traces the work of one gitlet command: the wall time of each of its phases, the files it
+ * reads, maps into memory and writes with their bytes, the directories it lists and the
+ * objects it parses by type. Tracing is turned on for a command by the --trace option before
+ * its name, or --trace=json, or for every command of the process by the GITLET_TRACE
+ * environment variable set to text or json. The session of a traced command holds its trace,
+ * which the I/O utilities update through the static methods of this class, doing nothing when
+ * the running command is not traced, and the trace is printed to the standard error when the
+ * session ends. The wall time is that of the command itself, not of the startup of the JVM.
+ * The counters are updated safely from the worker threads of a command as well.
+ * @author Yuhan Zhang
+ */
+public class Trace {
+
+    /** Environment variable tracing every command of the process. */
+    static final String ENV = "GITLET_TRACE";
+    /** Name of the phase of a command before it marks any other. */
+    private static final String FIRST_PHASE = "setup";
+    /** Number of nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** Name of the traced command. */
+    private final String command;
+    /** Whether the trace is printed as a line of JSON rather than as text. */
+    private final boolean json;
+    /** Time at which the command started, in nanoseconds. */
+    private final long start = System.nanoTime();
+    /** Wall time of each phase in nanoseconds, in the order the phases started. */
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    /** Name of the running phase. */
+    private String phase = FIRST_PHASE;
+    /** Time at which the running phase started, in nanoseconds. */
+    private long phaseStart = start;
+
+    /** Files read. */
+    private final Set<File> readFiles = ConcurrentHashMap.newKeySet();
+    /** Files mapped into memory. */
+    private final Set<File> mappedFiles = ConcurrentHashMap.newKeySet();
+    /** Files written. */
+    private final Set<File> writtenFiles = ConcurrentHashMap.newKeySet();
+    /** Directories listed. */
+    private final Set<File> listedDirs = ConcurrentHashMap.newKeySet();
+    /** Number of reads of files. */
+    private final LongAdder reads = new LongAdder();
+    /** Number of maps of files into memory. */
+    private final LongAdder maps = new LongAdder();
+    /** Number of writes of files. */
+    private final LongAdder writes = new LongAdder();
+    /** Number of directory listings. */
+    private final LongAdder listings = new LongAdder();
+    /** Number of bytes read. */
+    private final LongAdder bytesRead = new LongAdder();
+    /** Number of bytes mapped into memory. */
+    private final LongAdder bytesMapped = new LongAdder();
+    /** Number of bytes written. */
+    private final LongAdder bytesWritten = new LongAdder();
+    /** Number of objects parsed by type. */
+    private final Map<String, LongAdder> objects = new ConcurrentSkipListMap<>();
+
+    /** Constructor of the trace of the specified command. */
+    private Trace(String command, boolean json) {
+        this.command = command;
+        this.json = json;
+    }
+
+    /** Returns the trace of the specified command, asked by the --trace OPTION, or if OPTION
+     *  is null by the SETTING of the environment variable where the command was run, or null
+     *  if the command is not traced. */
+    public static Trace start(String command, String option, String setting) {
+        String format;
+        if (option == null) {
+            format = setting;
+            if (format == null || format.isEmpty() || format.equals("0")) {
+                return null;
+            }
+        } else if (option.equals("--trace")) {
+            format = "text";
+        } else if (option.startsWith("--trace=")) {
+            format = option.substring("--trace=".length());
+        } else {
+            format = option;
+        }
+        if (format.equals("json")) {
+            return new Trace(command, true);
+        } else if (format.equals("text") || option == null) {
+            // Any other value of the environment variable asks for text.
+            return new Trace(command, false);
+        }
+        exit("Incorrect operands.");
+        return null;
+    }
+
+    /** Ends the running phase of the traced command and starts the phase of the specified
+     *  name. */
+    public static void phase(String name) {
+        Trace t = Session.trace();
+        if (t != null) {
+            synchronized (t) {
+                long now = System.nanoTime();
+                t.phases.merge(t.phase, now - t.phaseStart, Long::sum);
+                t.phase = name;
+                t.phaseStart = now;
+            }
+        }
+    }
+
+    /** Records that the specified file was read, BYTES bytes of it. */
+    public static void read(File file, long bytes) {
+        Trace t = Session.trace();
+        if (t != null) {
+            t.readFiles.add(file);
+            t.reads.increment();
+            t.bytesRead.add(bytes);
+        }
+    }
+
+    /** Records that BYTES bytes of the specified file were mapped into memory. */
+    public static void mapped(File file, long bytes) {
+        Trace t = Session.trace();
+        if (t != null) {
+            t.mappedFiles.add(file);
+            t.maps.increment();
+            t.bytesMapped.add(bytes);
+        }
+    }
+
+    /** Records that BYTES bytes were written to the specified file. */
+    public static void wrote(File file, long bytes) {
+        Trace t = Session.trace();
+        if (t != null) {
+            t.writtenFiles.add(file);
+            t.writes.increment();
+            t.bytesWritten.add(bytes);
+        }
+    }
+
+    /** Records that the specified directory was listed. */
+    public static void listed(File dir) {
+        Trace t = Session.trace();
+        if (t != null) {
+            t.listedDirs.add(dir);
+            t.listings.increment();
+        }
+    }
+
+    /** Records that an object of the specified type was parsed. */
+    public static void parsed(String type) {
+        Trace t = Session.trace();
+        if (t != null) {
+            t.objects.computeIfAbsent(type, k -> new LongAdder()).increment();
+        }
+    }
+
+    /** Returns the type of the specified object as traced, the lowercase name of its
+     *  class. */
+    public static String typeOf(Object obj) {
+        return obj.getClass().getSimpleName().toLowerCase(Locale.ROOT);
+    }
+
+    /** Ends the traced command, returning its report, as text or as a line of JSON. */
+    public synchronized String end() {
+        long now = System.nanoTime();
+        phases.merge(phase, now - phaseStart, Long::sum);
+        phaseStart = now;
+        return json ? toJson(now - start) : toText(now - start);
+    }
+
+    /** Returns the report of the trace as text, given the TOTAL time of the command. */
+    private String toText(long total) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "[trace] %s: %.2f ms%n", command,
+                total / NANOS_PER_MILLI));
+        for (Map.Entry<String, Long> e : phases.entrySet()) {
+            sb.append(String.format(Locale.ROOT, "  phase %-16s %10.2f ms%n", e.getKey(),
+                    e.getValue() / NANOS_PER_MILLI));
+        }
+        sb.append(String.format(Locale.ROOT, "  read:    %d files, %d reads, %d bytes%n",
+                readFiles.size(), reads.sum(), bytesRead.sum()));
+        sb.append(String.format(Locale.ROOT, "  mapped:  %d files, %d maps, %d bytes%n",
+                mappedFiles.size(), maps.sum(), bytesMapped.sum()));
+        sb.append(String.format(Locale.ROOT, "  written: %d files, %d writes, %d bytes%n",
+                writtenFiles.size(), writes.sum(), bytesWritten.sum()));
+        sb.append(String.format(Locale.ROOT, "  listed:  %d directories, %d listings%n",
+                listedDirs.size(), listings.sum()));
+        sb.append("  parsed: ");
+        if (objects.isEmpty()) {
+            sb.append(" no objects");
+        }
+        String sep = " ";
+        for (Map.Entry<String, LongAdder> e : objects.entrySet()) {
+            sb.append(sep).append(e.getValue().sum()).append(' ').append(e.getKey());
+            sep = ", ";
+        }
+        return sb.toString();
+    }
+
+    /** Returns the report of the trace as a line of JSON, given the TOTAL time of the
+     *  command. */
+    private String toJson(long total) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"command\":").append(quote(command));
+        sb.append(",\"ms\":").append(millis(total));
+        sb.append(",\"phases\":{");
+        String sep = "";
+        for (Map.Entry<String, Long> e : phases.entrySet()) {
+            sb.append(sep).append(quote(e.getKey())).append(':').append(millis(e.getValue()));
+            sep = ",";
+        }
+        sb.append("},\"read\":").append(counts(readFiles, reads, bytesRead));
+        sb.append(",\"mapped\":").append(counts(mappedFiles, maps, bytesMapped));
+        sb.append(",\"written\":").append(counts(writtenFiles, writes, bytesWritten));
+        sb.append(",\"listed\":").append(String.format(Locale.ROOT,
+                "{\"directories\":%d,\"listings\":%d}", listedDirs.size(), listings.sum()));
+        sb.append(",\"parsed\":{");
+        sep = "";
+        for (Map.Entry<String, LongAdder> e : objects.entrySet()) {
+            sb.append(sep).append(quote(e.getKey())).append(':').append(e.getValue().sum());
+            sep = ",";
+        }
+        return sb.append("}}").toString();
+    }
+
+    /** Returns the JSON object of the numbers of the specified files, operations and
+     *  bytes. */
+    private static String counts(Set<File> files, LongAdder operations, LongAdder bytes) {
+        return String.format(Locale.ROOT, "{\"files\":%d,\"operations\":%d,\"bytes\":%d}",
+                files.size(), operations.sum(), bytes.sum());
+    }
+
+    /** Returns the specified nanoseconds in milliseconds, as a JSON number. */
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / NANOS_PER_MILLI);
+    }
+
+    /** Returns the specified string as a JSON string. */
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+}
@@ -0,0 +1,201 @@
+package gitlet;
+
+import java.util.*;
+
+import static gitlet.Utils.*;
+
+/**
+ * Represents a tree object, the listing of one directory tracked by a commit. Each entry
+ * maps the name of a file to the UID of its blob, or the name of a subdirectory, ending with
+ * a slash, to the UID of its tree. The UID of a tree is the hash of its entries, so that two
+ * directories with the same contents share the same tree, and comparing two trees stops at
+ * the subtrees which have the same UID.
+ * @author Yuhan Zhang
+ */
+public class Tree implements Dumpable {
+
+    /** Separator of the names in a path, ending the names of subdirectories. */
+    public static final String SEPARATOR = "/";
+
+    /** Map of the names of the entries of this tree to the UIDs of their objects. */
+    private final TreeMap<String, String> entries;
+    /** UID of this tree, SHA-1 hash of its entries. */
+    private final String UID;
+
+    /** Constructor of the tree of the specified entries. */
+    public Tree(TreeMap<String, String> entries) {
+        this.entries = entries;
+        List<Object> vals = new ArrayList<Object>();
+        vals.add("tree");
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            vals.add(e.getKey());
+            vals.add(e.getValue());
+        }
+        this.UID = sha1(vals);
+    }
+
+    /** Constructor of a decoded tree of the specified entries and UID. */
+    private Tree(TreeMap<String, String> entries, String uid) {
+        this.entries = entries;
+        this.UID = uid;
+    }
+
+    /** Encodes the tree: its UID and the number of its entries, followed by the name and
+     *  the UID of each entry. */
+    void encode(ObjectFormat.Output out) {
+        out.writeUID(UID);
+        out.writeVarint(entries.size());
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            out.writeString(e.getKey());
+            out.writeUID(e.getValue());
+        }
+    }
+
+    /** Returns the tree decoded from IN. */
+    static Tree decode(ObjectFormat.Input in) {
+        String uid = in.readUID();
+        TreeMap<String, String> entries = new TreeMap<>();
+        for (long i = in.readVarint(); i > 0; i -= 1) {
+            entries.put(in.readString(), in.readUID());
+        }
+        return new Tree(entries, uid);
+    }
+
+    /** Writes the tree to the specified store, unless it is already there. */
+    public void saveTo(ObjectStore store) {
+        if (!store.contains(UID)) {
+            store.write(UID, this);
+        }
+    }
+
+    /** Returns the tree of the specified UID read from STORE. */
+    public static Tree read(ObjectStore store, String uid) {
+        return store.read(uid, Tree.class);
+    }
+
+    /** Returns whether the entry of the specified name is a subdirectory. */
+    public static boolean isDirectory(String name) {
+        return name.endsWith(SEPARATOR);
+    }
+
+    /** Returns the UID of the root tree resulting from applying the CHANGES, mapping paths to
+     *  the UIDs of their new blobs (null if removed), to the root tree of the specified UID
+     *  (null if empty). Only the trees along the changed paths are written. */
+    public static String update(ObjectStore store, String rootID, Map<String, String> changes) {
+        String uid = updateTree(store, rootID, changes);
+        if (uid == null) {
+            Tree empty = new Tree(new TreeMap<>());
+            empty.saveTo(store);
+            uid = empty.UID;
+        }
+        return uid;
+    }
+
+    /** Returns the UID of the tree resulting from applying the CHANGES to the tree of the
+     *  specified UID, or null if the tree ends up empty. */
+    private static String updateTree(ObjectStore store, String uid, Map<String, String> changes) {
+        TreeMap<String, String> entries = uid == null
+                ? new TreeMap<>() : new TreeMap<>(read(store, uid).entries);
+        // Groups the changes below each subdirectory.
+        Map<String, Map<String, String>> subdirs = new TreeMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf(SEPARATOR);
+            if (slash >= 0) {
+                subdirs.computeIfAbsent(path.substring(0, slash + 1), k -> new TreeMap<>())
+                        .put(path.substring(slash + 1), e.getValue());
+            } else if (e.getValue() == null) {
+                entries.remove(path);
+            } else {
+                entries.put(path, e.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> e : subdirs.entrySet()) {
+            String subtree = updateTree(store, entries.get(e.getKey()), e.getValue());
+            if (subtree == null) {
+                entries.remove(e.getKey());
+            } else {
+                entries.put(e.getKey(), subtree);
+            }
+        }
+        if (entries.isEmpty()) {
+            return null;
+        }
+        Tree t = new Tree(entries);
+        t.saveTo(store);
+        return t.UID;
+    }
+
+    /** Puts into CHANGES the paths, under PREFIX, of the files which differ from the tree of
+     *  the UID FROM to the tree of the UID TO (both null if empty), mapped to the UIDs of
+     *  their blobs in TO (null if removed). Subtrees with the same UID are skipped. */
+    public static void diff(ObjectStore store, String from, String to, String prefix,
+                            Map<String, String> changes) {
+        if (Objects.equals(from, to)) {
+            return;
+        }
+        Map<String, String> a = from == null ? Collections.emptyMap() : read(store, from).entries;
+        Map<String, String> b = to == null ? Collections.emptyMap() : read(store, to).entries;
+        Set<String> names = new TreeSet<>(a.keySet());
+        names.addAll(b.keySet());
+        for (String name : names) {
+            String x = a.get(name);
+            String y = b.get(name);
+            if (Objects.equals(x, y)) {
+                continue;
+            }
+            if (isDirectory(name)) {
+                diff(store, x, y, prefix + name, changes);
+            } else {
+                changes.put(prefix + name, y);
+            }
+        }
+    }
+
+    /** Puts into FILES the paths, under PREFIX, of all the files of the tree of the specified
+     *  UID mapped to the UIDs of their blobs. */
+    public static void flatten(ObjectStore store, String uid, String prefix,
+                               Map<String, String> files) {
+        for (Map.Entry<String, String> e : read(store, uid).entries.entrySet()) {
+            if (isDirectory(e.getKey())) {
+                flatten(store, e.getValue(), prefix + e.getKey(), files);
+            } else {
+                files.put(prefix + e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /** Returns the UID of the blob of the file of the specified path in the tree of the
+     *  UID ROOTID, or null if it is not tracked. Only the trees along the path are read. */
+    public static String find(ObjectStore store, String rootID, String path) {
+        String uid = rootID;
+        String rest = path;
+        int slash = rest.indexOf(SEPARATOR);
+        while (slash >= 0 && uid != null) {
+            uid = read(store, uid).entries.get(rest.substring(0, slash + 1));
+            rest = rest.substring(slash + 1);
+            slash = rest.indexOf(SEPARATOR);
+        }
+        return uid == null ? null : read(store, uid).entries.get(rest);
+    }
+
+    /** Returns the map of the names of the entries of this tree to the UIDs of their
+     *  objects. */
+    public Map<String, String> getEntries() {
+        return this.entries;
+    }
+
+    /** Returns the UID of the tree. */
+    public String getUID() {
+        return this.UID;
+    }
+
+    /** Prints the UID and the entries of the tree. */
+    @Override
+    public void dump() {
+        System.out.printf("tree %s%n", UID);
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            System.out.printf("%s %s%n", e.getValue(), e.getKey());
+        }
+    }
+}
@@ -9,8 +9,12 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -31,6 +35,10 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** The size of the windows of files mapped into memory when streaming
+     *  them. */
+    static final int MAP_WINDOW = 1 << 26;
+
     /* SHA-1 HASH VALUES. */
 
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
@@ -63,6 +71,56 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the SHA-1 hash of the contents of FILE, digested through
+     *  successive windows of the file mapped into memory, so that the
+     *  contents are never read into memory at once.
+     *
+     * @author Yuhan Zhang
+     */
+    static String sha1(File file) {
+        try (FileChannel channel =
+                 FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long size = channel.size();
+            Trace.mapped(file, size);
+            for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                md.update(channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                                      Math.min(MAP_WINDOW, size - pos)));
+            }
+            return bytesToHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns the raw bytes of the hexadecimal UID.
+     *
+     * @author Yuhan Zhang
+     */
+    static byte[] hexToBytes(String uid) {
+        byte[] bytes = new byte[uid.length() / 2];
+        for (int i = 0; i < bytes.length; i += 1) {
+            bytes[i] = (byte) (Character.digit(uid.charAt(2 * i), 16) << 4
+                    | Character.digit(uid.charAt(2 * i + 1), 16));
+        }
+        return bytes;
+    }
+
+    /** Returns the hexadecimal UID of the raw BYTES.
+     *
+     * @author Yuhan Zhang
+     */
+    static String bytesToHex(byte[] bytes) {
+        StringBuilder uid = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            uid.append(Character.forDigit((b >> 4) & 0xf, 16));
+            uid.append(Character.forDigit(b & 0xf, 16));
+        }
+        return uid.toString();
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -98,7 +156,9 @@ class Utils {
             throw new IllegalArgumentException("must be a normal file");
         }
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Trace.read(file, contents.length);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -123,19 +183,57 @@ class Utils {
             }
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+            long size = 0;
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] bytes = obj instanceof byte[] ? (byte[]) obj
+                    : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(bytes);
+                size += bytes.length;
             }
             str.close();
+            Trace.wrote(file, size);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
+    /** Return the contents of FILE mapped read-only into memory.  FILE must
+     *  be a normal file.  Throws IllegalArgumentException in case of problems.
+     *
+     * @author Yuhan Zhang
+     */
+    static MappedByteBuffer mapContents(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        try (FileChannel channel =
+                 FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Trace.mapped(file, channel.size());
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write CONTENTS to a temporary file next to FILE, then rename it over
+     *  FILE, so that readers never observe a partially written FILE.  Throws
+     *  IllegalArgumentException in case of problems.
+     *
+     * @author Yuhan Zhang
+     */
+    static void replaceContents(File file, byte[] contents) {
+        File temp = new File(file.getPath() + ".tmp");
+        writeContents(temp, contents);
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -145,6 +243,8 @@ class Utils {
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Trace.read(file, file.length());
+            Trace.parsed(Trace.typeOf(result));
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -181,6 +281,7 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
+        Trace.listed(dir);
         String[] files = dir.list(PLAIN_FILES);
         if (files == null) {
             return null;
@@ -201,6 +302,7 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> subDirNamesIn(File dir) {
+        Trace.listed(dir);
         String[] dirs = dir.list(SUB_DIRS);
         if (dirs == null) {
             return null;
@@ -273,13 +375,26 @@ class Utils {
         System.out.println();
     }
 
-    /** Print a message and exit with code 0.
+    /** Print a message and exit with code 0, ending the command by an ExitException
+     *  caught by Main rather than the JVM, which may be serving other commands.
      *
      * @author Yuhan Zhang
      */
     static void exit(String msg) {
         System.out.println(msg);
-        System.exit(0);
+        throw new ExitException();
+    }
+
+    /** Exception ending the running command after its message was printed, thrown by exit.
+     *
+     * @author Yuhan Zhang
+     */
+    static class ExitException extends RuntimeException {
+
+        /** An ExitException, without a stack trace since it is not an error. */
+        ExitException() {
+            super(null, null, false, false);
+        }
     }
 
 }
@@ -0,0 +1,158 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Utils.*;
+import static gitlet.Repository.*;
+
+/**
+ * Writes the versions of files tracked by commits into a working directory. Many files are
+ * read, decoded and written concurrently by a bounded pool of workers, each one reading
+ * through its own object store since stores cache what they read, closed once all the files
+ * are written so that their pack files are not left open. Every file is written by
+ * exactly one worker, so the result is the same whatever the number of workers. The number
+ * of workers is the "checkout.workers" entry of the config, by default the number of cores.
+ * @author Yuhan Zhang
+ */
+public class Worktree {
+
+    /** Minimum number of files written with several workers. */
+    private static final int PARALLEL_THRESHOLD = 8;
+
+    /** Absolute path to the working directory. */
+    private final File directory;
+    /** Store holding the blobs written. */
+    private final ObjectStore store;
+    /** Maximum number of workers writing files. */
+    private final int workers;
+
+    /** Constructor of a worktree writing into DIRECTORY the blobs read from STORE with at
+     *  most WORKERS workers. */
+    public Worktree(File directory, ObjectStore store, int workers) {
+        this.directory = directory;
+        this.store = store;
+        this.workers = workers;
+    }
+
+    /** Returns the worktree of the local repository. */
+    public static Worktree local() {
+        String workers = Config.get(GITLET_DIR, "checkout.workers");
+        return new Worktree(CWD, ObjectStore.local(), workers == null
+                ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(workers));
+    }
+
+    /** Writes the specified files, mapping file names to the UIDs of their blobs. */
+    public void write(Map<String, String> files) {
+        if (workers <= 1 || files.size() < PARALLEL_THRESHOLD) {
+            for (Map.Entry<String, String> e : files.entrySet()) {
+                writeFile(store, e.getKey(), e.getValue());
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, files.size()));
+        List<ObjectStore> opened = Collections.synchronizedList(new ArrayList<>());
+        ThreadLocal<ObjectStore> stores = ThreadLocal.withInitial(() -> {
+            ObjectStore s = new ObjectStore(store.getDirectory());
+            opened.add(s);
+            return s;
+        });
+        List<Future<?>> results = new ArrayList<>();
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            results.add(pool.submit(() -> writeFile(stores.get(), e.getKey(), e.getValue())));
+        }
+        pool.shutdown();
+        try {
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+            close(pool, opened);
+        }
+    }
+
+    /** Closes the STORES of the workers of POOL, once the workers are all stopped. */
+    private static void close(ExecutorService pool, List<ObjectStore> stores) {
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (stores) {
+            for (ObjectStore s : stores) {
+                s.close();
+            }
+        }
+    }
+
+    /** Deletes the file of the specified name, and the directories it leaves empty. */
+    public void delete(String fileName) {
+        File file = join(directory, fileName);
+        if (file.exists()) {
+            file.delete();
+        }
+        File dir = file.getParentFile();
+        while (!dir.equals(directory) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Returns the sorted paths of all the files of the working directory, with the names
+     *  of directories separated by slashes, skipping the repository directory. */
+    public List<String> listFiles() {
+        List<String> files = new ArrayList<>();
+        listFiles(directory, "", files);
+        Collections.sort(files);
+        return files;
+    }
+
+    /** Adds the paths of the files under DIR, prefixed with PREFIX, into FILES. */
+    private void listFiles(File dir, String prefix, List<String> files) {
+        Trace.listed(dir);
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File f : children) {
+            if (f.isFile()) {
+                files.add(prefix + f.getName());
+            } else if (f.isDirectory() && !f.equals(join(directory, ".gitlet"))) {
+                listFiles(f, prefix + f.getName() + Tree.SEPARATOR, files);
+            }
+        }
+    }
+
+    /** Writes the version of the file of the specified name streamed from the store. */
+    private void writeFile(ObjectStore from, String fileName, String blobID) {
+        File file = join(directory, fileName);
+        file.getParentFile().mkdirs();
+        try (InputStream in = from.openBlob(blobID)) {
+            Trace.wrote(file, Files.copy(in, file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package speed;
+
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Times replaying a script of 10000 gitlet commands with --batch in a single process, and
+ * compares the time per command with running the first commands of the script as separate
+ * processes.
+ * @author Yuhan Zhang
+ */
+public class BatchSpeedTest {
+
+    /** Number of files of the repository. */
+    private static final int FILES = 100;
+    /** Number of commands of the script. */
+    private static final int COMMANDS = 10000;
+    /** Number of commands of the script run as separate processes. */
+    private static final int SAMPLE = 200;
+
+    public static void main(String[] args) throws Exception {
+        List<String> script = new ArrayList<>();
+        for (int f = 0; f < FILES; f += 1) {
+            script.add("add f" + f + ".txt");
+        }
+        script.add("commit \"Added the files\"");
+        for (int i = 0; script.size() < COMMANDS; i += 1) {
+            script.add("branch b" + i);
+            script.add("checkout b" + i);
+            script.add("status");
+            script.add("checkout master");
+            script.add("rm-branch b" + i);
+        }
+
+        File batch = setUp();
+        Files.write(new File(batch, "script.txt").toPath(), script);
+        Stopwatch sw = new Stopwatch();
+        gitlet(batch, "--batch", "script.txt");
+        double batchTime = sw.elapsedTime();
+
+        File alone = setUp();
+        sw = new Stopwatch();
+        for (String line : script.subList(0, SAMPLE)) {
+            List<String> command = new ArrayList<>(List.of(line.split(" ", 2)));
+            if (command.get(0).equals("commit")) {
+                command.set(1, command.get(1).replace("\"", ""));
+            }
+            gitlet(alone, command.toArray(new String[0]));
+        }
+        double aloneTime = sw.elapsedTime();
+
+        System.out.printf("%d commands with --batch: %.2f s, %.2f ms per command\n",
+                COMMANDS, batchTime, 1000 * batchTime / COMMANDS);
+        System.out.printf("%d commands as processes: %.2f s, %.2f ms per command\n",
+                SAMPLE, aloneTime, 1000 * aloneTime / SAMPLE);
+        for (File dir : new File[] {batch, alone}) {
+            Files.walk(dir.toPath()).sorted(Comparator.reverseOrder())
+                    .map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /** Returns the directory of a new repository of the files. */
+    private static File setUp() throws Exception {
+        File dir = Files.createTempDirectory("gitlet-batch").toFile();
+        gitlet(dir, "init");
+        for (int f = 0; f < FILES; f += 1) {
+            Files.writeString(new File(dir, "f" + f + ".txt").toPath(), "file " + f + "\n");
+        }
+        return dir;
+    }
+
+    /** Runs gitlet with the specified args in the directory DIR, discarding its output, and
+     *  waits for it. */
+    private static void gitlet(File dir, String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add("java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("gitlet.Main");
+        command.addAll(List.of(args));
+        new ProcessBuilder(command).directory(dir)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD).start().waitFor();
+    }
+
+}
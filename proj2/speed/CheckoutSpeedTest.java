@@ -0,0 +1,90 @@
+package speed;
+
+import edu.princeton.cs.algs4.Stopwatch;
+import gitlet.Blob;
+import gitlet.Codec;
+import gitlet.ObjectStore;
+import gitlet.Worktree;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Times writing the files of a synthetic commit into an empty working directory with
+ * different numbers of workers, and checks that every run writes exactly the same files.
+ * @author Yuhan Zhang
+ */
+public class CheckoutSpeedTest {
+
+    /** Number of files of the synthetic commit. */
+    private static final int FILES = 4000;
+    /** Maximum size of a file. */
+    private static final int MAX_SIZE = 32768;
+
+    public static void main(String[] args) throws IOException {
+        File root = Files.createTempDirectory("gitlet-checkout").toFile();
+        File objects = new File(root, "objects");
+        objects.mkdir();
+        ObjectStore store = new ObjectStore(objects, Codec.DEFLATE);
+        Map<String, String> files = new TreeMap<>();
+        Random random = new Random(61);
+        long total = 0;
+        for (int i = 0; i < FILES; i += 1) {
+            byte[] contents = new byte[random.nextInt(MAX_SIZE)];
+            for (int j = 0; j < contents.length; j += 1) {
+                contents[j] = (byte) ('a' + random.nextInt(8));
+            }
+            Blob b = new Blob(contents);
+            b.saveTo(store);
+            files.put("file" + i + ".txt", b.getUID());
+            total += contents.length;
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d files, %d MB, %d cores\n", FILES, total >> 20, cores);
+        System.out.printf("%12s %12s %12s %12s\n", "workers", "time (s)", "files/s", "same");
+        System.out.printf("----------------------------------------------------\n");
+        String expected = null;
+        for (int workers : new int[]{1, 2, 4, 8, 2 * cores}) {
+            File dir = new File(root, "worktree" + workers);
+            dir.mkdir();
+            Stopwatch sw = new Stopwatch();
+            new Worktree(dir, store, workers).write(files);
+            double time = sw.elapsedTime();
+            String digest = digest(dir, files);
+            if (expected == null) {
+                expected = digest;
+            }
+            System.out.printf("%12d %12.2f %12.0f %12s\n", workers, time, FILES / time,
+                    digest.equals(expected));
+        }
+        Files.walk(root.toPath()).sorted(Comparator.reverseOrder())
+                .map(p -> p.toFile()).forEach(File::delete);
+    }
+
+    /** Returns the SHA-1 hash of the names and contents of the files written in DIR. */
+    private static String digest(File dir, Map<String, String> files) throws IOException {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            for (String name : files.keySet()) {
+                md.update(name.getBytes());
+                md.update(Files.readAllBytes(new File(dir, name).toPath()));
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package speed;
+
+import edu.princeton.cs.algs4.Stopwatch;
+import gitlet.Blob;
+import gitlet.Codec;
+import gitlet.ObjectStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Times storing successive versions of a large binary file, each one editing a small region
+ * of the previous one, and measures how many bytes each version adds to the object store.
+ * Thanks to content-defined chunking, a version costs about the size of its edit.
+ * @author Yuhan Zhang
+ */
+public class ChunkSpeedTest {
+
+    /** Size of the file. */
+    private static final int SIZE = 256 << 20;
+    /** Size of the region overwritten by an edit. */
+    private static final int EDIT_SIZE = 1 << 20;
+
+    public static void main(String[] args) throws IOException {
+        File root = Files.createTempDirectory("gitlet-chunk").toFile();
+        File objects = new File(root, "objects");
+        objects.mkdir();
+        ObjectStore store = new ObjectStore(objects, Codec.NONE);
+        Random random = new Random(18);
+        byte[] contents = new byte[SIZE];
+        random.nextBytes(contents);
+
+        System.out.printf("%d MB file, %d MB edits\n", SIZE >> 20, EDIT_SIZE >> 20);
+        System.out.printf("%12s %12s %12s %12s %12s\n",
+                "version", "time (s)", "added (MB)", "chunks", "new chunks");
+        System.out.printf("-----------------------------------------------------------------\n");
+        Set<String> stored = new HashSet<>();
+        for (int version = 0; version < 5; version += 1) {
+            if (version > 0) {
+                byte[] edit = new byte[EDIT_SIZE];
+                random.nextBytes(edit);
+                System.arraycopy(edit, 0, contents, random.nextInt(SIZE - EDIT_SIZE), EDIT_SIZE);
+            }
+            long before = size(objects.toPath());
+            Stopwatch sw = new Stopwatch();
+            Blob b = new Blob(contents);
+            b.saveTo(store);
+            double time = sw.elapsedTime();
+            List<String> chunks = store.getChunks(b.getUID());
+            int added = 0;
+            for (String chunk : chunks) {
+                if (stored.add(chunk)) {
+                    added += 1;
+                }
+            }
+            System.out.printf("%12d %12.2f %12.2f %12d %12d\n", version, time,
+                    (size(objects.toPath()) - before) / 1048576.0, chunks.size(), added);
+        }
+        Files.walk(root.toPath()).sorted(Comparator.reverseOrder())
+                .map(Path::toFile).forEach(File::delete);
+    }
+
+    /** Returns the total size of the files under the specified directory. */
+    private static long size(Path dir) throws IOException {
+        return Files.walk(dir).filter(Files::isRegularFile)
+                .mapToLong(p -> p.toFile().length()).sum();
+    }
+
+}
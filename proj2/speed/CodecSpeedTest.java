@@ -0,0 +1,105 @@
+package speed;
+
+import edu.princeton.cs.algs4.Stopwatch;
+import gitlet.Blob;
+import gitlet.Codec;
+import gitlet.ObjectStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the compression codecs of gitlet objects on a synthetic repository: writes the
+ * same blobs to a fresh object store with each codec, then reads them all back, and prints
+ * the time taken and the size on disk.
+ * @author Yuhan Zhang
+ */
+public class CodecSpeedTest {
+
+    /** Number of files of the synthetic repository. */
+    private static final int FILES = 200;
+    /** Number of versions of each file. */
+    private static final int VERSIONS = 10;
+    /** Words the text files are made of. */
+    private static final String[] WORDS = {"public", "static", "void", "int", "return",
+        "if", "else", "for", "while", "new", "String", "List", "Map", "this", "null",
+        "true", "false", "class", "private", "final"};
+
+    public static void main(String[] args) throws IOException {
+        List<Blob> blobs = generate(new Random(61));
+        long raw = 0;
+        for (Blob b : blobs) {
+            raw += b.getContents().length;
+        }
+        System.out.printf("%d blobs, %d KB of contents\n", blobs.size(), raw / 1024);
+        System.out.printf("%12s %12s %12s %12s %12s\n",
+                "codec", "write (s)", "read (s)", "size (KB)", "ratio");
+        System.out.printf("----------------------------------------------------------------\n");
+        for (Codec codec : new Codec[]{Codec.NONE, Codec.FAST, Codec.DEFLATE}) {
+            File dir = Files.createTempDirectory("gitlet-codec").toFile();
+            ObjectStore store = new ObjectStore(dir, codec);
+
+            Stopwatch sw = new Stopwatch();
+            for (Blob b : blobs) {
+                b.saveTo(store);
+            }
+            double writeTime = sw.elapsedTime();
+
+            sw = new Stopwatch();
+            for (Blob b : blobs) {
+                store.read(b.getUID(), Blob.class);
+            }
+            double readTime = sw.elapsedTime();
+
+            long size = sizeOf(dir);
+            System.out.printf("%12s %12.2f %12.2f %12d %12.2f\n", codec.getName(),
+                    writeTime, readTime, size / 1024, (double) size / raw);
+            delete(dir);
+        }
+    }
+
+    /** Returns the blobs of several versions of text files and a few binary files. */
+    private static List<Blob> generate(Random random) {
+        List<Blob> blobs = new ArrayList<>();
+        for (int i = 0; i < FILES; i += 1) {
+            if (i % 10 == 0) {
+                // Binary files, such as images, hardly compress.
+                byte[] bytes = new byte[8192 + random.nextInt(32768)];
+                random.nextBytes(bytes);
+                blobs.add(new Blob(bytes));
+                continue;
+            }
+            StringBuilder sb = new StringBuilder();
+            int lines = 50 + random.nextInt(500);
+            for (int v = 0; v < VERSIONS; v += 1) {
+                for (int l = 0; l < lines / VERSIONS; l += 1) {
+                    for (int w = 0; w < 8; w += 1) {
+                        sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+                    }
+                    sb.append(random.nextInt(1000)).append(";\n");
+                }
+                blobs.add(new Blob(sb.toString().getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        return blobs;
+    }
+
+    /** Returns the total size of the files under the specified directory. */
+    private static long sizeOf(File dir) throws IOException {
+        return Files.walk(dir.toPath()).map(p -> p.toFile())
+                .filter(File::isFile).mapToLong(File::length).sum();
+    }
+
+    /** Deletes the specified directory and everything under it. */
+    private static void delete(File dir) throws IOException {
+        Files.walk(dir.toPath()).sorted(Comparator.reverseOrder())
+                .map(p -> p.toFile()).forEach(File::delete);
+    }
+
+}
@@ -0,0 +1,104 @@
+package speed;
+
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Times running the same commands as separate gitlet processes, first on their own, then
+ * forwarded to a daemon of the repository. Every command still starts a JVM, but the daemon
+ * runs it warm, with the objects of the repository already cached.
+ * @author Yuhan Zhang
+ */
+public class DaemonSpeedTest {
+
+    /** Number of directories of the repository. */
+    private static final int DIRS = 10;
+    /** Number of files of each directory. */
+    private static final int FILES = 20;
+    /** Number of commits of the repository. */
+    private static final int COMMITS = 30;
+    /** Number of times each command is run. */
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        File root = Files.createTempDirectory("gitlet-daemon").toFile();
+        gitlet(root, "init");
+        Process daemon = start(root, "daemon");
+        while (!new File(root, ".gitlet/daemon").exists()) {
+            Thread.sleep(50);
+        }
+        // Builds the repository through the daemon.
+        for (int d = 0; d < DIRS; d += 1) {
+            for (int f = 0; f < FILES; f += 1) {
+                File file = new File(root, "d" + d + "/f" + f + ".txt");
+                file.getParentFile().mkdirs();
+                Files.writeString(file.toPath(), d + " " + f + "\n");
+                gitlet(root, "add", "d" + d + "/f" + f + ".txt");
+            }
+        }
+        gitlet(root, "commit", "files");
+        for (int i = 0; i < COMMITS; i += 1) {
+            Files.writeString(new File(root, "d0/f0.txt").toPath(), i + "\n");
+            gitlet(root, "add", "d0/f0.txt");
+            gitlet(root, "commit", "commit " + i);
+        }
+
+        String[][] commands = {
+            {"status"}, {"log"}, {"global-log"}, {"checkout", "--", "d0/f0.txt"}
+        };
+        double[] withDaemon = time(root, commands);
+        gitlet(root, "daemon", "stop");
+        daemon.waitFor();
+        double[] alone = time(root, commands);
+
+        System.out.printf("%d files, %d commits, %d runs of each command\n",
+                DIRS * FILES, COMMITS + 2, ROUNDS);
+        System.out.printf("%12s %14s %14s\n", "command", "alone (s)", "daemon (s)");
+        System.out.printf("------------------------------------------\n");
+        for (int i = 0; i < commands.length; i += 1) {
+            System.out.printf("%12s %14.2f %14.2f\n", commands[i][0], alone[i], withDaemon[i]);
+        }
+        Files.walk(root.toPath()).sorted(Comparator.reverseOrder())
+                .map(Path::toFile).forEach(File::delete);
+    }
+
+    /** Returns the time taken to run each of the COMMANDS ROUNDS times in the repository of
+     *  the directory DIR. */
+    private static double[] time(File dir, String[][] commands) throws Exception {
+        double[] times = new double[commands.length];
+        for (int i = 0; i < commands.length; i += 1) {
+            Stopwatch sw = new Stopwatch();
+            for (int r = 0; r < ROUNDS; r += 1) {
+                gitlet(dir, commands[i]);
+            }
+            times[i] = sw.elapsedTime();
+        }
+        return times;
+    }
+
+    /** Runs gitlet with the specified args in the directory DIR, and waits for it. */
+    private static void gitlet(File dir, String... args) throws Exception {
+        start(dir, args).waitFor();
+    }
+
+    /** Starts gitlet with the specified args in the directory DIR, discarding its output. */
+    private static Process start(File dir, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("gitlet.Main");
+        command.addAll(List.of(args));
+        return new ProcessBuilder(command).directory(dir)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+    }
+
+}
@@ -0,0 +1,94 @@
+package speed;
+
+import edu.princeton.cs.algs4.Stopwatch;
+import gitlet.ObjectFormat;
+import gitlet.Tree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Times encoding and decoding trees of increasing size with Java serialization and with the
+ * binary ObjectFormat, and compares the sizes of their encoded bytes.
+ * @author Yuhan Zhang
+ */
+public class FormatSpeedTest {
+
+    /** Number of entries encoded and decoded for each size of tree. */
+    private static final int ROUNDS = 2000000;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(21);
+        System.out.printf("%8s %12s %12s %12s %12s %12s %12s\n", "entries",
+                "java (B)", "format (B)", "java enc", "format enc", "java dec", "format dec");
+        System.out.printf("-----------------------------------------------------------------"
+                + "--------------------------\n");
+        for (int n = 10; n <= 10000; n *= 10) {
+            TreeMap<String, String> entries = new TreeMap<>();
+            for (int i = 0; i < n; i += 1) {
+                entries.put("file" + random.nextInt(1 << 30) + ".txt", randomUID(random));
+            }
+            Tree tree = new Tree(entries);
+            int rounds = ROUNDS / n;
+
+            byte[] java = serialize(tree);
+            Stopwatch sw = new Stopwatch();
+            for (int i = 0; i < rounds; i += 1) {
+                java = serialize(tree);
+            }
+            double javaEncode = sw.elapsedTime();
+            sw = new Stopwatch();
+            for (int i = 0; i < rounds; i += 1) {
+                deserialize(java);
+            }
+            double javaDecode = sw.elapsedTime();
+
+            byte[] format = ObjectFormat.encode(tree);
+            sw = new Stopwatch();
+            for (int i = 0; i < rounds; i += 1) {
+                format = ObjectFormat.encode(tree);
+            }
+            double formatEncode = sw.elapsedTime();
+            sw = new Stopwatch();
+            for (int i = 0; i < rounds; i += 1) {
+                ObjectFormat.decode(format);
+            }
+            double formatDecode = sw.elapsedTime();
+
+            System.out.printf("%8d %12d %12d %12.3f %12.3f %12.3f %12.3f\n", n, java.length,
+                    format.length, javaEncode, formatEncode, javaDecode, formatDecode);
+        }
+    }
+
+    /** Returns a random UID. */
+    private static String randomUID(Random random) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40; i += 1) {
+            sb.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return sb.toString();
+    }
+
+    /** Returns the bytes of the specified object serialized by Java. */
+    private static byte[] serialize(Serializable obj) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(stream)) {
+            out.writeObject(obj);
+        }
+        return stream.toByteArray();
+    }
+
+    /** Returns the object of the specified bytes serialized by Java. */
+    private static Object deserialize(byte[] bytes) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package speed;
+
+import edu.princeton.cs.algs4.Stopwatch;
+import gitlet.Bitmap;
+import gitlet.CommitGraph;
+import gitlet.ObjectStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Times the ancestry checks of push and fetch on a synthetic history of a million commits,
+ * with a merge every hundred commits, comparing the commit-graph and its reachability
+ * bitmaps against collecting the whole history in a set, as push used to.
+ * @author Yuhan Zhang
+ */
+public class ReachabilitySpeedTest {
+
+    /** Number of commits of the synthetic history. */
+    private static final int COMMITS = 1000000;
+    /** Number of commits between two merges. */
+    private static final int MERGE_SPACING = 100;
+    /** Number of ancestry checks timed. */
+    private static final int QUERIES = 1000;
+
+    public static void main(String[] args) throws IOException {
+        String[] uids = new String[COMMITS];
+        List<CommitGraph.Entry> entries = new ArrayList<>(COMMITS);
+        for (int i = 0; i < COMMITS; i += 1) {
+            uids[i] = sha1("commit " + i);
+            entries.add(new CommitGraph.Entry(uids[i], i == 0 ? null : uids[i - 1],
+                    mergeParent(i) < 0 ? null : uids[mergeParent(i)], i * 1000L));
+        }
+        File dir = Files.createTempDirectory("gitlet-graph").toFile();
+
+        Stopwatch sw = new Stopwatch();
+        CommitGraph graph = new CommitGraph(new ObjectStore(dir));
+        graph.append(entries);
+        System.out.printf("Built the graph of %d commits in %.2f s, %d KB of bitmaps\n",
+                COMMITS, sw.elapsedTime(), new File(dir, "commit-bitmaps").length() / 1024);
+
+        Random random = new Random(61);
+        int[][] queries = new int[QUERIES][2];
+        for (int[] q : queries) {
+            q[0] = random.nextInt(COMMITS);
+            q[1] = random.nextInt(COMMITS);
+        }
+        System.out.printf("%24s %12s %12s %12s\n", "method", "# checks", "time (s)",
+                "microsec/op");
+        System.out.printf("-------------------------------------------------------------\n");
+
+        sw = new Stopwatch();
+        boolean[] answers = new boolean[QUERIES];
+        int found = 0;
+        for (int k = 0; k < QUERIES; k += 1) {
+            answers[k] = graph.isAncestor(uids[queries[k][0]], uids[queries[k][1]]);
+            found += answers[k] ? 1 : 0;
+        }
+        print("commit-graph + bitmaps", QUERIES, sw.elapsedTime());
+
+        // Collecting the whole history is so slow that only a few checks are timed.
+        int slowQueries = QUERIES / 100;
+        sw = new Stopwatch();
+        int mismatches = 0;
+        for (int k = 0; k < slowQueries; k += 1) {
+            boolean answer = history(uids, queries[k][1]).contains(uids[queries[k][0]]);
+            mismatches += answer != answers[k] ? 1 : 0;
+        }
+        print("history set", slowQueries, sw.elapsedTime());
+
+        sw = new Stopwatch();
+        Bitmap missing = graph.reachable(uids[COMMITS - 1])
+                .andNot(graph.reachable(uids[COMMITS - 1 - MERGE_SPACING * 10]));
+        System.out.printf("Found the %d commits missing from a remote in %.3f s\n",
+                missing.cardinality(), sw.elapsedTime());
+        System.out.printf("%d of %d checks were ancestors, %d mismatches between methods\n",
+                found, QUERIES, mismatches);
+        Files.walk(dir.toPath()).sorted(Comparator.reverseOrder())
+                .map(p -> p.toFile()).forEach(File::delete);
+    }
+
+    /** Returns the position of the merge parent of the commit at position I, or -1. */
+    private static int mergeParent(int i) {
+        return i > MERGE_SPACING && i % MERGE_SPACING == 0 ? i - MERGE_SPACING / 2 : -1;
+    }
+
+    /** Returns the UIDs of all the commits reachable from the commit at position HEAD. */
+    private static Set<String> history(String[] uids, int head) {
+        Set<String> visited = new HashSet<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(head);
+        while (!stack.isEmpty()) {
+            int pos = stack.pop();
+            if (pos < 0 || !visited.add(uids[pos])) {
+                continue;
+            }
+            stack.push(pos - 1);
+            stack.push(mergeParent(pos));
+        }
+        return visited;
+    }
+
+    /** Prints a row of the timing table. */
+    private static void print(String method, int checks, double time) {
+        System.out.printf("%24s %12d %12.3f %12.2f\n", method, checks, time,
+                time / checks * 1e6);
+    }
+
+    /** Returns the SHA-1 hash of the string S in hexadecimal. */
+    private static String sha1(String s) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest(s.getBytes(StandardCharsets.UTF_8))) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+}